@@ -0,0 +1,101 @@
+package com.mycompany.furnituredesignapp;
+
+import com.jogamp.opengl.*;
+import com.jogamp.opengl.glu.GLU;
+import java.util.*;
+
+/**
+ * Offscreen frame-time benchmark for {@link InstancedFurnitureRenderer}.
+ * Runs without a GPU on Mesa's software rasterizer:
+ *
+ * <pre>
+ * LIBGL_ALWAYS_SOFTWARE=1 java -cp target/FurnitureDesignApp-1.0-SNAPSHOT-jar-with-dependencies.jar \
+ *     com.mycompany.furnituredesignapp.FrameTimeBenchmark [items] [frames]
+ * </pre>
+ */
+class FrameTimeBenchmark implements GLEventListener {
+    private static final String[] TYPES = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private final InstancedFurnitureRenderer renderer = new InstancedFurnitureRenderer();
+    private final GLU glu = new GLU();
+    private final ArrayList<FurnitureItem3D> items = new ArrayList<>();
+
+    FrameTimeBenchmark(int itemCount) {
+        Random random = new Random(42);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new FurnitureItem3D(TYPES[i % TYPES.length],
+                    random.nextFloat() * 40f - 20f, 0f, random.nextFloat() * 40f - 20f));
+        }
+    }
+
+    public static void main(String[] args) {
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        GLProfile profile = GLProfile.get(GLProfile.GL2);
+        GLCapabilities capabilities = new GLCapabilities(profile);
+        capabilities.setOnscreen(false);
+        GLAutoDrawable drawable = GLDrawableFactory.getFactory(profile)
+                .createOffscreenAutoDrawable(null, capabilities, null, WIDTH, HEIGHT);
+        FrameTimeBenchmark benchmark = new FrameTimeBenchmark(itemCount);
+        drawable.addGLEventListener(benchmark);
+
+        for (int i = 0; i < frames / 10; i++) {
+            drawable.display();
+        }
+
+        long[] samples = new long[frames];
+        for (int i = 0; i < frames; i++) {
+            long start = System.nanoTime();
+            drawable.display();
+            samples[i] = System.nanoTime() - start;
+        }
+        String renderer = drawable.getContext().getGLVersion();
+        drawable.destroy();
+
+        Arrays.sort(samples);
+        System.out.printf("%s, %d items, %d frames, %d draw calls/frame%n",
+                renderer, itemCount, frames, benchmark.renderer.getDrawCalls());
+        System.out.printf("frame time ms: p50 %.2f  p95 %.2f  p99 %.2f  max %.2f%n",
+                percentile(samples, 50), percentile(samples, 95), percentile(samples, 99),
+                samples[samples.length - 1] / 1_000_000.0);
+    }
+
+    private static double percentile(long[] sorted, int p) {
+        int index = Math.min(sorted.length - 1, (int) Math.ceil(p / 100.0 * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    @Override
+    public void init(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        gl.glEnable(GL.GL_DEPTH_TEST);
+        renderer.init(gl);
+    }
+
+    @Override
+    public void display(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+        gl.glMatrixMode(GL2.GL_PROJECTION);
+        gl.glLoadIdentity();
+        glu.gluPerspective(45f, (float) WIDTH / HEIGHT, 0.1f, 200f);
+        gl.glMatrixMode(GL2.GL_MODELVIEW);
+        gl.glLoadIdentity();
+        glu.gluLookAt(0f, 25f, 35f, 0f, 0f, 0f, 0f, 1f, 0f);
+        renderer.draw(gl, items, null, null);
+        gl.glFinish();
+    }
+
+    @Override
+    public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+        drawable.getGL().glViewport(0, 0, width, height);
+    }
+
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+        renderer.dispose(drawable.getGL().getGL2());
+    }
+}
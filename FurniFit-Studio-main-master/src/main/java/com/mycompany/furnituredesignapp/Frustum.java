@@ -0,0 +1,81 @@
+package com.mycompany.furnituredesignapp;
+
+/**
+ * View frustum as six inward-facing planes (a, b, c, d with ax + by + cz + d >= 0
+ * inside), built from the same camera parameters DesignPanel3D passes to GLU.
+ */
+class Frustum {
+    static final int OUTSIDE = 0;
+    static final int INTERSECTS = 1;
+    static final int INSIDE = 2;
+
+    private final float[] planes = new float[24];
+
+    public void set(float[] eye, float[] forward, float[] right, float[] up,
+            float fieldOfViewY, float aspect, float near, float far) {
+        float th = (float) Math.tan(Math.toRadians(fieldOfViewY / 2));
+        float tw = th * aspect;
+
+        setPlane(0, forward[0], forward[1], forward[2], eye, near);
+        setPlane(1, -forward[0], -forward[1], -forward[2], eye, -far);
+        setPlane(2, right[0] + forward[0] * tw, right[1] + forward[1] * tw, right[2] + forward[2] * tw, eye, 0);
+        setPlane(3, -right[0] + forward[0] * tw, -right[1] + forward[1] * tw, -right[2] + forward[2] * tw, eye, 0);
+        setPlane(4, up[0] + forward[0] * th, up[1] + forward[1] * th, up[2] + forward[2] * th, eye, 0);
+        setPlane(5, -up[0] + forward[0] * th, -up[1] + forward[1] * th, -up[2] + forward[2] * th, eye, 0);
+    }
+
+    // Plane through eye + normal * offset (offset along the unnormalized normal is fine
+    // for near/far because forward is unit length).
+    private void setPlane(int index, float nx, float ny, float nz, float[] eye, float offset) {
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        nx /= length;
+        ny /= length;
+        nz /= length;
+        int p = index * 4;
+        planes[p] = nx;
+        planes[p + 1] = ny;
+        planes[p + 2] = nz;
+        planes[p + 3] = -(nx * eye[0] + ny * eye[1] + nz * eye[2]) - offset;
+    }
+
+    /** Classifies the box (min x, y, z then max x, y, z) stored at the given offset. */
+    public int classify(float[] box, int offset) {
+        int result = INSIDE;
+        for (int p = 0; p < 24; p += 4) {
+            float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            // Farthest corner along the normal decides "outside"; the nearest decides "inside".
+            float far = a * box[offset + (a >= 0 ? 3 : 0)] + b * box[offset + (b >= 0 ? 4 : 1)]
+                    + c * box[offset + (c >= 0 ? 5 : 2)] + d;
+            if (far < 0) {
+                return OUTSIDE;
+            }
+            float near = a * box[offset + (a >= 0 ? 0 : 3)] + b * box[offset + (b >= 0 ? 1 : 4)]
+                    + c * box[offset + (c >= 0 ? 2 : 5)] + d;
+            if (near < 0) {
+                result = INTERSECTS;
+            }
+        }
+        return result;
+    }
+}
+
+/** Per-frame culling counters. */
+class CullStats {
+    int nodesVisited;
+    int frustumCulled;
+    int drawn;
+
+    void reset() {
+        nodesVisited = frustumCulled = drawn = 0;
+    }
+
+    public int getCulledCount() {
+        return frustumCulled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("drawn %d, frustum culled %d, nodes visited %d",
+                drawn, frustumCulled, nodesVisited);
+    }
+}
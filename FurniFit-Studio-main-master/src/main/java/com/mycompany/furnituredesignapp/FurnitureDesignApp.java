@@ -268,14 +268,26 @@ class DesignPanel3D extends GLCanvas implements GLEventListener, RoomConfigListe
     private String roomShape = "Rectangle";
     private Color3f roomColor = new Color3f(0.8f, 0.8f, 0.8f);
     private String selectedFurnitureType = null;
-    private ArrayList<FurnitureItem3D> furnitureItems = new ArrayList<>();
-    private FurnitureItem3D selectedItem = null;
+    // Read by the render thread inside display(), so changed only while holding itemBvh.
+    private final ArrayList<FurnitureItem3D> furnitureItems = new ArrayList<>();
+    private volatile FurnitureItem3D selectedItem = null;
     private Point dragStart = null;
     private boolean isDragging = false;
     private float cameraX = 0f, cameraY = 0f, cameraZ = 10f;
     private float lookAtX = 0f, lookAtY = 0f, lookAtZ = 0f;
     private float upX = 0f, upY = 1f, upZ = 0f;
     private ArrayList<SelectionListener> selectionListeners = new ArrayList<>();
+    private static final float FIELD_OF_VIEW = 45f;
+    private static final float NEAR_PLANE = 0.1f;
+    private static final float FAR_PLANE = 100f;
+    private final GLU glu = new GLU();
+    private final InstancedFurnitureRenderer furnitureRenderer = new InstancedFurnitureRenderer();
+    private volatile long frameTimeNanos;
+    private final ItemBvh itemBvh = new ItemBvh();
+    private volatile FurnitureItem3D hoveredItem = null;
+    private final ArrayList<FurnitureItem3D> visibleItems = new ArrayList<>();
+    private final Frustum frustum = new Frustum();
+    private final CullStats cullStats = new CullStats();
 
     public DesignPanel3D() {
         GLProfile profile = GLProfile.get(GLProfile.GL2);
@@ -288,17 +300,184 @@ class DesignPanel3D extends GLCanvas implements GLEventListener, RoomConfigListe
     }
 
     // Implement all required GLEventListener methods
-    @Override public void init(GLAutoDrawable drawable) { /* implementation */ }
-    @Override public void display(GLAutoDrawable drawable) { /* implementation */ }
+    @Override public void init(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        gl.glEnable(GL.GL_DEPTH_TEST);
+        gl.glClearColor(0.9f, 0.9f, 0.9f, 1f);
+        furnitureRenderer.init(gl);
+    }
+
+    @Override public void display(GLAutoDrawable drawable) {
+        long start = System.nanoTime();
+        GL2 gl = drawable.getGL().getGL2();
+        gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+
+        gl.glMatrixMode(GL2.GL_PROJECTION);
+        gl.glLoadIdentity();
+        glu.gluPerspective(FIELD_OF_VIEW, (float) getWidth() / Math.max(getHeight(), 1), NEAR_PLANE, FAR_PLANE);
+        gl.glMatrixMode(GL2.GL_MODELVIEW);
+        gl.glLoadIdentity();
+        glu.gluLookAt(cameraX, cameraY, cameraZ, lookAtX, lookAtY, lookAtZ, upX, upY, upZ);
+
+        float[] eye = {cameraX, cameraY, cameraZ};
+        float[][] basis = cameraBasis();
+        frustum.set(eye, basis[0], basis[1], basis[2], FIELD_OF_VIEW,
+                (float) getWidth() / Math.max(getHeight(), 1), NEAR_PLANE, FAR_PLANE);
+
+        visibleItems.clear();
+        synchronized (itemBvh) {
+            itemBvh.update(furnitureItems);
+            itemBvh.cull(frustum, visibleItems, cullStats);
+        }
+        furnitureRenderer.draw(gl, visibleItems, selectedItem, hoveredItem);
+        frameTimeNanos += (long) ((System.nanoTime() - start - frameTimeNanos) * 0.1);
+    }
+
     @Override public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
         GL2 gl = drawable.getGL().getGL2();
         gl.glViewport(0, 0, width, height);
     }
-    @Override public void dispose(GLAutoDrawable drawable) { animator.stop(); }
+
+    @Override public void dispose(GLAutoDrawable drawable) {
+        animator.stop();
+        furnitureRenderer.dispose(drawable.getGL().getGL2());
+    }
+
+    public double getAverageFrameTimeMillis() {
+        return frameTimeNanos / 1_000_000.0;
+    }
+
+    /** Counters from the most recent frame; read them on the rendering thread or treat as approximate. */
+    public CullStats getCullStats() {
+        return cullStats;
+    }
+
+    /** Forward, right and up unit vectors of the current camera. */
+    private float[][] cameraBasis() {
+        float[] forward = normalize(lookAtX - cameraX, lookAtY - cameraY, lookAtZ - cameraZ);
+        float[] right = normalize(forward[1] * upZ - forward[2] * upY,
+                forward[2] * upX - forward[0] * upZ,
+                forward[0] * upY - forward[1] * upX);
+        float[] up = {right[1] * forward[2] - right[2] * forward[1],
+                      right[2] * forward[0] - right[0] * forward[2],
+                      right[0] * forward[1] - right[1] * forward[0]};
+        return new float[][]{forward, right, up};
+    }
+
+    private void setupMouseListeners() {
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                requestFocusInWindow();
+                if (!SwingUtilities.isLeftMouseButton(e)) {
+                    return;
+                }
+                float[] ray = rayAt(e.getX(), e.getY());
+                if (selectedFurnitureType != null) {
+                    float[] floor = floorHit(ray);
+                    if (floor != null) {
+                        FurnitureItem3D item = new FurnitureItem3D(selectedFurnitureType, floor[0], 0f, floor[1]);
+                        synchronized (itemBvh) {
+                            furnitureItems.add(item);
+                            itemBvh.markDirty();
+                        }
+                        setSelectedItem(item);
+                    }
+                    return;
+                }
+                setSelectedItem(pick(ray));
+                dragStart = selectedItem != null ? e.getPoint() : null;
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                isDragging = false;
+                dragStart = null;
+            }
+
+            public void mouseExited(MouseEvent e) {
+                hoveredItem = null;
+            }
+        });
+
+        addMouseMotionListener(new MouseAdapter() {
+            public void mouseMoved(MouseEvent e) {
+                hoveredItem = pick(rayAt(e.getX(), e.getY()));
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                FurnitureItem3D item = selectedItem;
+                if (item == null || dragStart == null) {
+                    return;
+                }
+                float[] from = floorHit(rayAt(dragStart.x, dragStart.y));
+                float[] to = floorHit(rayAt(e.getX(), e.getY()));
+                if (from != null && to != null) {
+                    isDragging = true;
+                    synchronized (itemBvh) {
+                        item.moveTo(item.getX() + to[0] - from[0], item.getZ() + to[1] - from[1]);
+                        itemBvh.refit(item);
+                    }
+                }
+                dragStart = e.getPoint();
+            }
+        });
+    }
+
+    private FurnitureItem3D pick(float[] ray) {
+        synchronized (itemBvh) {
+            itemBvh.update(furnitureItems);
+            return itemBvh.pick(ray[0], ray[1], ray[2], ray[3], ray[4], ray[5]);
+        }
+    }
+
+    /** World-space ray through a pixel: origin followed by direction. */
+    private float[] rayAt(int mouseX, int mouseY) {
+        float[][] basis = cameraBasis();
+        float[] forward = basis[0], right = basis[1], up = basis[2];
+
+        float tanHalf = (float) Math.tan(Math.toRadians(FIELD_OF_VIEW / 2));
+        float aspect = (float) getWidth() / Math.max(getHeight(), 1);
+        float px = (2f * mouseX / Math.max(getWidth(), 1) - 1f) * tanHalf * aspect;
+        float py = (1f - 2f * mouseY / Math.max(getHeight(), 1)) * tanHalf;
+        return new float[]{cameraX, cameraY, cameraZ,
+                           forward[0] + right[0] * px + up[0] * py,
+                           forward[1] + right[1] * px + up[1] * py,
+                           forward[2] + right[2] * px + up[2] * py};
+    }
+
+    private static float[] floorHit(float[] ray) {
+        if (ray[4] == 0) {
+            return null;
+        }
+        float t = -ray[1] / ray[4];
+        return t > 0 ? new float[]{ray[0] + ray[3] * t, ray[2] + ray[5] * t} : null;
+    }
+
+    private static float[] normalize(float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return new float[]{x / length, y / length, z / length};
+    }
+
+    public void addSelectionListener(SelectionListener listener) {
+        selectionListeners.add(listener);
+    }
+
+    private void setSelectedItem(FurnitureItem3D item) {
+        this.selectedItem = item;
+        for (SelectionListener listener : selectionListeners) {
+            listener.onSelectionChanged(item);
+        }
+    }
 
     // Other methods...
     public void setSelectedFurniture(String type) { this.selectedFurnitureType = type; }
-    public void clearDesign() { furnitureItems.clear(); setSelectedItem(null); }
+    public void clearDesign() {
+        synchronized (itemBvh) {
+            furnitureItems.clear();
+            itemBvh.markDirty();
+        }
+        hoveredItem = null;
+        setSelectedItem(null);
+    }
     // Add all other required methods
 }
 
@@ -308,6 +487,7 @@ class FurnitureItem3D implements Serializable {
     private float width, height, depth;
     private float rotationY = 0;
     private transient Color3f color;
+    private transient String meshKey;
     
     public FurnitureItem3D(String type, float x, float y, float z) {
         this.type = type;
@@ -342,30 +522,75 @@ class FurnitureItem3D implements Serializable {
         }
     }
     
-    public void draw(GL2 gl, boolean selected) {
-        gl.glPushMatrix();
-        gl.glTranslatef(x, y, z);
-        gl.glRotatef(rotationY, 0, 1, 0);
-        gl.glColor3f(selected ? 1f : color.x, selected ? 0f : color.y, selected ? 0f : color.z);
-        
-        switch (type.toLowerCase()) {
-            case "chair": drawChair(gl); break;
-            case "table": drawTable(gl); break;
-            case "sofa": drawSofa(gl); break;
-            case "bed": drawBed(gl); break;
-            case "cabinet": drawCabinet(gl); break;
-            case "lamp": drawLamp(gl); break;
-            default: drawCube(gl);
+    public String getMeshKey() {
+        if (meshKey == null) {
+            meshKey = type.toLowerCase();
         }
-        gl.glPopMatrix();
+        return meshKey;
     }
-    
-    private void drawCube(GL2 gl) {
-        float hw = width/2, hh = height/2, hd = depth/2;
-        gl.glBegin(GL2.GL_QUADS);
-        // Front, back, top, bottom, left, right faces
-        gl.glEnd();
+
+    public String getType() { return type; }
+    public float getX() { return x; }
+    public float getY() { return y; }
+    public float getZ() { return z; }
+    public float getWidth() { return width; }
+    public float getHeight() { return height; }
+    public float getDepth() { return depth; }
+    public float getRotationY() { return rotationY; }
+
+    public Color3f getColor() {
+        if (color == null) {
+            setDefaultColor();
+        }
+        return color;
     }
-    
-    // Implement other drawing methods (drawChair, drawTable, etc.)
-}
\ No newline at end of file
+
+    public void moveTo(float x, float z) {
+        this.x = x;
+        this.z = z;
+    }
+
+    /** Writes the world-space box (min x, y, z then max x, y, z) at the given offset. */
+    public void getBounds(float[] out, int offset) {
+        double angle = Math.toRadians(rotationY);
+        float c = (float) Math.abs(Math.cos(angle)), s = (float) Math.abs(Math.sin(angle));
+        float halfX = c * width / 2 + s * depth / 2;
+        float halfZ = s * width / 2 + c * depth / 2;
+        out[offset] = x - halfX;
+        out[offset + 1] = y;
+        out[offset + 2] = z - halfZ;
+        out[offset + 3] = x + halfX;
+        out[offset + 4] = y + height;
+        out[offset + 5] = z + halfZ;
+    }
+
+    /**
+     * Distance along the ray to this item's oriented box, or Float.MAX_VALUE
+     * when the ray misses it.
+     */
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz) {
+        double angle = Math.toRadians(rotationY);
+        float c = (float) Math.cos(angle), s = (float) Math.sin(angle);
+        float rx = ox - x, rz = oz - z;
+        float lox = c * rx - s * rz, loz = s * rx + c * rz;
+        float ldx = c * dx - s * dz, ldz = s * dx + c * dz;
+
+        float tMin = 0f, tMax = Float.MAX_VALUE;
+        float[][] slabs = {{lox, ldx, -width / 2, width / 2}, {oy, dy, y, y + height}, {loz, ldz, -depth / 2, depth / 2}};
+        for (float[] slab : slabs) {
+            if (slab[1] == 0) {
+                if (slab[0] < slab[2] || slab[0] > slab[3]) {
+                    return Float.MAX_VALUE;
+                }
+                continue;
+            }
+            float t1 = (slab[2] - slab[0]) / slab[1], t2 = (slab[3] - slab[0]) / slab[1];
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+            if (tMin > tMax) {
+                return Float.MAX_VALUE;
+            }
+        }
+        return tMin;
+    }
+}
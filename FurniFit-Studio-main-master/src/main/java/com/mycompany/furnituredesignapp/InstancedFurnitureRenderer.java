@@ -0,0 +1,316 @@
+package com.mycompany.furnituredesignapp;
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.*;
+import java.nio.FloatBuffer;
+import java.util.*;
+import javax.vecmath.*;
+
+/**
+ * Draws furniture from per-type meshes that are uploaded to the GPU once.
+ * Items of the same type are batched into one instanced draw call, with the
+ * per-item transform and colour streamed as instance attributes.
+ */
+class InstancedFurnitureRenderer {
+    private static final int POSITION = 0;
+    private static final int NORMAL = 1;
+    private static final int OFFSET = 2;
+    private static final int SCALE = 3;
+    private static final int COLOR = 4;
+    private static final int INSTANCE_FLOATS = 10;
+    private static final Color3f SELECTED_COLOR = new Color3f(1f, 0f, 0f);
+    private static final Color3f HOVER_COLOR = new Color3f(1f, 0.6f, 0.2f);
+
+    private static final String VERTEX_SHADER =
+            "#version 120\n" +
+            "attribute vec3 aPosition;\n" +
+            "attribute vec3 aNormal;\n" +
+            "attribute vec4 aOffset;\n" +
+            "attribute vec3 aScale;\n" +
+            "attribute vec3 aColor;\n" +
+            "varying vec3 vColor;\n" +
+            "void main() {\n" +
+            "    float c = cos(aOffset.w);\n" +
+            "    float s = sin(aOffset.w);\n" +
+            "    vec3 p = aPosition * aScale;\n" +
+            "    vec3 world = vec3(c * p.x + s * p.z, p.y, -s * p.x + c * p.z) + aOffset.xyz;\n" +
+            "    vec3 n = aNormal / aScale;\n" +
+            "    n = normalize(vec3(c * n.x + s * n.z, n.y, -s * n.x + c * n.z));\n" +
+            "    float lambert = max(dot(n, normalize(vec3(0.4, 1.0, 0.6))), 0.0);\n" +
+            "    vColor = aColor * (0.35 + 0.65 * lambert);\n" +
+            "    gl_Position = gl_ModelViewProjectionMatrix * vec4(world, 1.0);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#version 120\n" +
+            "varying vec3 vColor;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vec4(vColor, 1.0);\n" +
+            "}\n";
+
+    private final MeshCache meshCache = new MeshCache();
+    private final Map<String, ArrayList<FurnitureItem3D>> batches = new HashMap<>();
+    private FloatBuffer instanceData = Buffers.newDirectFloatBuffer(64 * INSTANCE_FLOATS);
+    private int program;
+    private int drawCalls;
+
+    public void init(GL2 gl) {
+        program = ShaderUtil.link(gl, VERTEX_SHADER, FRAGMENT_SHADER,
+                new String[]{"aPosition", "aNormal", "aOffset", "aScale", "aColor"});
+    }
+
+    public void draw(GL2 gl, Collection<FurnitureItem3D> items, FurnitureItem3D selected, FurnitureItem3D hovered) {
+        for (ArrayList<FurnitureItem3D> batch : batches.values()) {
+            batch.clear();
+        }
+        for (FurnitureItem3D item : items) {
+            batches.computeIfAbsent(item.getMeshKey(), k -> new ArrayList<>()).add(item);
+        }
+
+        drawCalls = 0;
+        gl.glUseProgram(program);
+        for (Map.Entry<String, ArrayList<FurnitureItem3D>> entry : batches.entrySet()) {
+            ArrayList<FurnitureItem3D> batch = entry.getValue();
+            if (batch.isEmpty()) {
+                continue;
+            }
+            Mesh mesh = meshCache.get(gl, entry.getKey());
+            uploadInstances(gl, mesh, batch, selected, hovered);
+            gl.glBindVertexArray(mesh.vao);
+            gl.glDrawArraysInstanced(GL.GL_TRIANGLES, 0, mesh.vertexCount, batch.size());
+            drawCalls++;
+        }
+        gl.glBindVertexArray(0);
+        gl.glUseProgram(0);
+    }
+
+    private void uploadInstances(GL2 gl, Mesh mesh, List<FurnitureItem3D> batch,
+            FurnitureItem3D selected, FurnitureItem3D hovered) {
+        int floats = batch.size() * INSTANCE_FLOATS;
+        if (instanceData.capacity() < floats) {
+            instanceData = Buffers.newDirectFloatBuffer(Math.max(floats, instanceData.capacity() * 2));
+        }
+        instanceData.clear();
+        for (FurnitureItem3D item : batch) {
+            Color3f color = item == selected ? SELECTED_COLOR : item == hovered ? HOVER_COLOR : item.getColor();
+            instanceData.put(item.getX()).put(item.getY()).put(item.getZ())
+                    .put((float) Math.toRadians(item.getRotationY()))
+                    .put(item.getWidth()).put(item.getHeight()).put(item.getDepth())
+                    .put(color.x).put(color.y).put(color.z);
+        }
+        instanceData.flip();
+
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, mesh.instanceVbo);
+        long bytes = (long) floats * Buffers.SIZEOF_FLOAT;
+        if (bytes > mesh.instanceCapacity) {
+            mesh.instanceCapacity = bytes;
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, bytes, instanceData, GL2ES2.GL_STREAM_DRAW);
+        } else {
+            gl.glBufferSubData(GL.GL_ARRAY_BUFFER, 0, bytes, instanceData);
+        }
+        gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public void dispose(GL2 gl) {
+        meshCache.dispose(gl);
+        if (program != 0) {
+            gl.glDeleteProgram(program);
+            program = 0;
+        }
+    }
+
+    private static class Mesh {
+        int vao;
+        int vbo;
+        int instanceVbo;
+        int vertexCount;
+        long instanceCapacity;
+    }
+
+    /**
+     * One mesh per furniture type, built in a unit box (x and z in [-0.5, 0.5],
+     * y in [0, 1]) and scaled to the item's dimensions by the vertex shader.
+     */
+    private static class MeshCache {
+        private final Map<String, Mesh> meshes = new HashMap<>();
+
+        Mesh get(GL2 gl, String type) {
+            Mesh mesh = meshes.get(type);
+            if (mesh == null) {
+                mesh = upload(gl, buildGeometry(type));
+                meshes.put(type, mesh);
+            }
+            return mesh;
+        }
+
+        private Mesh upload(GL2 gl, float[] vertices) {
+            Mesh mesh = new Mesh();
+            mesh.vertexCount = vertices.length / 6;
+
+            int[] ids = new int[2];
+            gl.glGenVertexArrays(1, ids, 0);
+            mesh.vao = ids[0];
+            gl.glGenBuffers(2, ids, 0);
+            mesh.vbo = ids[0];
+            mesh.instanceVbo = ids[1];
+
+            gl.glBindVertexArray(mesh.vao);
+
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, mesh.vbo);
+            gl.glBufferData(GL.GL_ARRAY_BUFFER, (long) vertices.length * Buffers.SIZEOF_FLOAT,
+                    Buffers.newDirectFloatBuffer(vertices), GL.GL_STATIC_DRAW);
+            int stride = 6 * Buffers.SIZEOF_FLOAT;
+            gl.glEnableVertexAttribArray(POSITION);
+            gl.glVertexAttribPointer(POSITION, 3, GL.GL_FLOAT, false, stride, 0);
+            gl.glEnableVertexAttribArray(NORMAL);
+            gl.glVertexAttribPointer(NORMAL, 3, GL.GL_FLOAT, false, stride, 3L * Buffers.SIZEOF_FLOAT);
+
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, mesh.instanceVbo);
+            int instanceStride = INSTANCE_FLOATS * Buffers.SIZEOF_FLOAT;
+            gl.glEnableVertexAttribArray(OFFSET);
+            gl.glVertexAttribPointer(OFFSET, 4, GL.GL_FLOAT, false, instanceStride, 0);
+            gl.glVertexAttribDivisor(OFFSET, 1);
+            gl.glEnableVertexAttribArray(SCALE);
+            gl.glVertexAttribPointer(SCALE, 3, GL.GL_FLOAT, false, instanceStride, 4L * Buffers.SIZEOF_FLOAT);
+            gl.glVertexAttribDivisor(SCALE, 1);
+            gl.glEnableVertexAttribArray(COLOR);
+            gl.glVertexAttribPointer(COLOR, 3, GL.GL_FLOAT, false, instanceStride, 7L * Buffers.SIZEOF_FLOAT);
+            gl.glVertexAttribDivisor(COLOR, 1);
+
+            gl.glBindVertexArray(0);
+            gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+            return mesh;
+        }
+
+        void dispose(GL2 gl) {
+            for (Mesh mesh : meshes.values()) {
+                gl.glDeleteBuffers(2, new int[]{mesh.vbo, mesh.instanceVbo}, 0);
+                gl.glDeleteVertexArrays(1, new int[]{mesh.vao}, 0);
+            }
+            meshes.clear();
+        }
+
+        private static float[] buildGeometry(String type) {
+            ArrayList<float[]> boxes = new ArrayList<>();
+            switch (type) {
+                case "chair":
+                    boxes.add(new float[]{-0.5f, 0.45f, -0.5f, 0.5f, 0.55f, 0.5f});
+                    boxes.add(new float[]{-0.5f, 0.55f, 0.4f, 0.5f, 1f, 0.5f});
+                    addLegs(boxes, 0.1f, 0.45f);
+                    break;
+                case "table":
+                    boxes.add(new float[]{-0.5f, 0.9f, -0.5f, 0.5f, 1f, 0.5f});
+                    addLegs(boxes, 0.08f, 0.9f);
+                    break;
+                case "sofa":
+                    boxes.add(new float[]{-0.5f, 0f, -0.5f, 0.5f, 0.55f, 0.5f});
+                    boxes.add(new float[]{-0.5f, 0.55f, 0.3f, 0.5f, 1f, 0.5f});
+                    boxes.add(new float[]{-0.5f, 0.55f, -0.5f, -0.4f, 0.8f, 0.3f});
+                    boxes.add(new float[]{0.4f, 0.55f, -0.5f, 0.5f, 0.8f, 0.3f});
+                    break;
+                case "bed":
+                    boxes.add(new float[]{-0.5f, 0f, -0.5f, 0.5f, 0.6f, 0.5f});
+                    boxes.add(new float[]{-0.5f, 0.6f, 0.42f, 0.5f, 1f, 0.5f});
+                    break;
+                case "lamp":
+                    boxes.add(new float[]{-0.4f, 0f, -0.4f, 0.4f, 0.05f, 0.4f});
+                    boxes.add(new float[]{-0.08f, 0.05f, -0.08f, 0.08f, 0.75f, 0.08f});
+                    boxes.add(new float[]{-0.5f, 0.75f, -0.5f, 0.5f, 1f, 0.5f});
+                    break;
+                default:
+                    boxes.add(new float[]{-0.5f, 0f, -0.5f, 0.5f, 1f, 0.5f});
+            }
+
+            float[] vertices = new float[boxes.size() * 36 * 6];
+            int offset = 0;
+            for (float[] box : boxes) {
+                offset = putBox(vertices, offset, box);
+            }
+            return vertices;
+        }
+
+        private static void addLegs(List<float[]> boxes, float size, float top) {
+            boxes.add(new float[]{-0.5f, 0f, -0.5f, -0.5f + size, top, -0.5f + size});
+            boxes.add(new float[]{0.5f - size, 0f, -0.5f, 0.5f, top, -0.5f + size});
+            boxes.add(new float[]{-0.5f, 0f, 0.5f - size, -0.5f + size, top, 0.5f});
+            boxes.add(new float[]{0.5f - size, 0f, 0.5f - size, 0.5f, top, 0.5f});
+        }
+
+        private static int putBox(float[] v, int o, float[] b) {
+            float x0 = b[0], y0 = b[1], z0 = b[2], x1 = b[3], y1 = b[4], z1 = b[5];
+            o = putQuad(v, o, 0, 0, 1, x0, y0, z1, x1, y0, z1, x1, y1, z1, x0, y1, z1);
+            o = putQuad(v, o, 0, 0, -1, x1, y0, z0, x0, y0, z0, x0, y1, z0, x1, y1, z0);
+            o = putQuad(v, o, 0, 1, 0, x0, y1, z1, x1, y1, z1, x1, y1, z0, x0, y1, z0);
+            o = putQuad(v, o, 0, -1, 0, x0, y0, z0, x1, y0, z0, x1, y0, z1, x0, y0, z1);
+            o = putQuad(v, o, -1, 0, 0, x0, y0, z0, x0, y0, z1, x0, y1, z1, x0, y1, z0);
+            o = putQuad(v, o, 1, 0, 0, x1, y0, z1, x1, y0, z0, x1, y1, z0, x1, y1, z1);
+            return o;
+        }
+
+        private static int putQuad(float[] v, int o, float nx, float ny, float nz,
+                float ax, float ay, float az, float bx, float by, float bz,
+                float cx, float cy, float cz, float dx, float dy, float dz) {
+            float[][] corners = {{ax, ay, az}, {bx, by, bz}, {cx, cy, cz},
+                                 {ax, ay, az}, {cx, cy, cz}, {dx, dy, dz}};
+            for (float[] c : corners) {
+                v[o++] = c[0]; v[o++] = c[1]; v[o++] = c[2];
+                v[o++] = nx; v[o++] = ny; v[o++] = nz;
+            }
+            return o;
+        }
+    }
+}
+
+class ShaderUtil {
+    static int link(GL2 gl, String vertexSource, String fragmentSource, String[] attributes) {
+        int vertex = compile(gl, GL2ES2.GL_VERTEX_SHADER, vertexSource);
+        int fragment = compile(gl, GL2ES2.GL_FRAGMENT_SHADER, fragmentSource);
+        int program = gl.glCreateProgram();
+        gl.glAttachShader(program, vertex);
+        gl.glAttachShader(program, fragment);
+        for (int i = 0; i < attributes.length; i++) {
+            gl.glBindAttribLocation(program, i, attributes[i]);
+        }
+        gl.glLinkProgram(program);
+        gl.glDeleteShader(vertex);
+        gl.glDeleteShader(fragment);
+
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL2ES2.GL_LINK_STATUS, status, 0);
+        if (status[0] == GL.GL_FALSE) {
+            String log = programLog(gl, program);
+            gl.glDeleteProgram(program);
+            throw new GLException("Shader link failed: " + log);
+        }
+        return program;
+    }
+
+    private static int compile(GL2 gl, int kind, String source) {
+        int shader = gl.glCreateShader(kind);
+        gl.glShaderSource(shader, 1, new String[]{source}, null, 0);
+        gl.glCompileShader(shader);
+        int[] status = new int[1];
+        gl.glGetShaderiv(shader, GL2ES2.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == GL.GL_FALSE) {
+            int[] length = new int[1];
+            gl.glGetShaderiv(shader, GL2ES2.GL_INFO_LOG_LENGTH, length, 0);
+            byte[] log = new byte[Math.max(length[0], 1)];
+            gl.glGetShaderInfoLog(shader, log.length, length, 0, log, 0);
+            gl.glDeleteShader(shader);
+            throw new GLException("Shader compile failed: " + new String(log, 0, length[0]));
+        }
+        return shader;
+    }
+
+    private static String programLog(GL2 gl, int program) {
+        int[] length = new int[1];
+        gl.glGetProgramiv(program, GL2ES2.GL_INFO_LOG_LENGTH, length, 0);
+        byte[] log = new byte[Math.max(length[0], 1)];
+        gl.glGetProgramInfoLog(program, log.length, length, 0, log, 0);
+        return new String(log, 0, length[0]);
+    }
+}
@@ -0,0 +1,297 @@
+package com.mycompany.furnituredesignapp;
+
+import java.util.*;
+
+/**
+ * Bounding volume hierarchy over the world-space boxes of furniture items.
+ * Moving an item only refits the boxes on its leaf-to-root path; adding or
+ * removing items marks the tree for a rebuild on the next query. Nodes are
+ * stored in flat arrays to keep traversal cheap enough for mouse-move events.
+ */
+class ItemBvh {
+    private static final int LEAF_SIZE = 4;
+
+    private FurnitureItem3D[] items = new FurnitureItem3D[0];
+    private final IdentityHashMap<FurnitureItem3D, Integer> slots = new IdentityHashMap<>();
+    private int[] order = new int[0];
+    private int[] itemLeaf = new int[0];
+    private float[] itemBounds = new float[0];
+
+    private float[] bounds = new float[0];
+    private int[] left = new int[0];
+    private int[] right = new int[0];
+    private int[] parent = new int[0];
+    private int[] start = new int[0];
+    private int[] count = new int[0];
+    private int[] subtreeItems = new int[0];
+    private int nodeCount;
+    private int refitsSinceBuild;
+    private boolean dirty = true;
+
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public void update(List<FurnitureItem3D> source) {
+        if (dirty || refitsSinceBuild > 4 * items.length + 64) {
+            build(source);
+        }
+    }
+
+    public void build(List<FurnitureItem3D> source) {
+        int n = source.size();
+        items = source.toArray(new FurnitureItem3D[0]);
+        slots.clear();
+        order = new int[n];
+        itemLeaf = new int[n];
+        itemBounds = new float[n * 6];
+        float[] centroids = new float[n * 3];
+        for (int i = 0; i < n; i++) {
+            slots.put(items[i], i);
+            order[i] = i;
+            items[i].getBounds(itemBounds, i * 6);
+            for (int a = 0; a < 3; a++) {
+                centroids[i * 3 + a] = (itemBounds[i * 6 + a] + itemBounds[i * 6 + 3 + a]) * 0.5f;
+            }
+        }
+
+        int capacity = Math.max(1, 2 * n);
+        bounds = new float[capacity * 6];
+        left = new int[capacity];
+        right = new int[capacity];
+        parent = new int[capacity];
+        start = new int[capacity];
+        count = new int[capacity];
+        subtreeItems = new int[capacity];
+        nodeCount = 0;
+        if (n > 0) {
+            buildNode(centroids, 0, n, -1);
+        }
+        refitsSinceBuild = 0;
+        dirty = false;
+    }
+
+    private int buildNode(float[] centroids, int from, int to, int parentNode) {
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        left[node] = right[node] = -1;
+        subtreeItems[node] = to - from;
+
+        float[] centroidBounds = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+                                  -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = from; i < to; i++) {
+            int item = order[i];
+            for (int a = 0; a < 3; a++) {
+                centroidBounds[a] = Math.min(centroidBounds[a], centroids[item * 3 + a]);
+                centroidBounds[3 + a] = Math.max(centroidBounds[3 + a], centroids[item * 3 + a]);
+            }
+        }
+
+        if (to - from <= LEAF_SIZE) {
+            start[node] = from;
+            count[node] = to - from;
+            for (int i = from; i < to; i++) {
+                itemLeaf[order[i]] = node;
+            }
+            refitLeaf(node);
+            return node;
+        }
+
+        int axis = 0;
+        float extent = centroidBounds[3] - centroidBounds[0];
+        for (int a = 1; a < 3; a++) {
+            if (centroidBounds[3 + a] - centroidBounds[a] > extent) {
+                extent = centroidBounds[3 + a] - centroidBounds[a];
+                axis = a;
+            }
+        }
+        int mid = (from + to) >>> 1;
+        selectNth(centroids, axis, from, to - 1, mid);
+
+        count[node] = 0;
+        left[node] = buildNode(centroids, from, mid, node);
+        right[node] = buildNode(centroids, mid, to, node);
+        refitInner(node);
+        return node;
+    }
+
+    // Quickselect on centroid coordinate so the split is a median partition in O(n).
+    private void selectNth(float[] centroids, int axis, int lo, int hi, int nth) {
+        while (lo < hi) {
+            float pivot = centroids[order[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (centroids[order[i] * 3 + axis] < pivot) i++;
+                while (centroids[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            if (nth <= j) {
+                hi = j;
+            } else if (nth >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Updates the boxes on the path from the item's leaf to the root after the
+     * item moved, rotated or was resized.
+     */
+    public void refit(FurnitureItem3D item) {
+        Integer slot = slots.get(item);
+        if (slot == null || dirty) {
+            dirty = true;
+            return;
+        }
+        item.getBounds(itemBounds, slot * 6);
+        int node = itemLeaf[slot];
+        refitLeaf(node);
+        for (node = parent[node]; node >= 0; node = parent[node]) {
+            refitInner(node);
+        }
+        refitsSinceBuild++;
+    }
+
+    private void refitLeaf(int node) {
+        int b = node * 6;
+        Arrays.fill(bounds, b, b + 3, Float.MAX_VALUE);
+        Arrays.fill(bounds, b + 3, b + 6, -Float.MAX_VALUE);
+        for (int i = start[node], end = start[node] + count[node]; i < end; i++) {
+            int ib = order[i] * 6;
+            for (int a = 0; a < 3; a++) {
+                bounds[b + a] = Math.min(bounds[b + a], itemBounds[ib + a]);
+                bounds[b + 3 + a] = Math.max(bounds[b + 3 + a], itemBounds[ib + 3 + a]);
+            }
+        }
+    }
+
+    private void refitInner(int node) {
+        int b = node * 6, l = left[node] * 6, r = right[node] * 6;
+        for (int a = 0; a < 3; a++) {
+            bounds[b + a] = Math.min(bounds[l + a], bounds[r + a]);
+            bounds[b + 3 + a] = Math.max(bounds[l + 3 + a], bounds[r + 3 + a]);
+        }
+    }
+
+    /**
+     * Returns the closest item hit by the ray, or null. The direction does not
+     * need to be normalized.
+     */
+    public FurnitureItem3D pick(float ox, float oy, float oz, float dx, float dy, float dz) {
+        if (nodeCount == 0) {
+            return null;
+        }
+        float ix = 1f / dx, iy = 1f / dy, iz = 1f / dz;
+        FurnitureItem3D best = null;
+        float bestT = Float.MAX_VALUE;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (slab(node * 6, bounds, ox, oy, oz, ix, iy, iz) >= bestT) {
+                continue;
+            }
+            if (left[node] < 0) {
+                for (int i = start[node], end = start[node] + count[node]; i < end; i++) {
+                    int item = order[i];
+                    if (slab(item * 6, itemBounds, ox, oy, oz, ix, iy, iz) >= bestT) {
+                        continue;
+                    }
+                    float t = items[item].intersect(ox, oy, oz, dx, dy, dz);
+                    if (t < bestT) {
+                        bestT = t;
+                        best = items[item];
+                    }
+                }
+            } else {
+                float tl = slab(left[node] * 6, bounds, ox, oy, oz, ix, iy, iz);
+                float tr = slab(right[node] * 6, bounds, ox, oy, oz, ix, iy, iz);
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                // Push the farther child first so the nearer one is visited first.
+                if (tl <= tr) {
+                    if (tr < bestT) stack[top++] = right[node];
+                    if (tl < bestT) stack[top++] = left[node];
+                } else {
+                    if (tl < bestT) stack[top++] = left[node];
+                    if (tr < bestT) stack[top++] = right[node];
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Collects the items that are inside the frustum. Subtrees fully inside the
+     * frustum skip further plane tests, and a subtree fully outside is skipped
+     * in one step.
+     */
+    public void cull(Frustum frustum, List<FurnitureItem3D> visible, CullStats stats) {
+        stats.reset();
+        if (nodeCount == 0) {
+            return;
+        }
+        int[] stack = new int[64];
+        boolean[] inside = new boolean[64];
+        int top = 0;
+        stack[top] = 0;
+        inside[top++] = false;
+        while (top > 0) {
+            int node = stack[--top];
+            boolean fullyInside = inside[top];
+            stats.nodesVisited++;
+
+            if (!fullyInside) {
+                int result = frustum.classify(bounds, node * 6);
+                if (result == Frustum.OUTSIDE) {
+                    stats.frustumCulled += subtreeItems[node];
+                    continue;
+                }
+                fullyInside = result == Frustum.INSIDE;
+            }
+
+            if (left[node] < 0) {
+                for (int i = start[node], end = start[node] + count[node]; i < end; i++) {
+                    int item = order[i];
+                    if (!fullyInside && frustum.classify(itemBounds, item * 6) == Frustum.OUTSIDE) {
+                        stats.frustumCulled++;
+                    } else {
+                        visible.add(items[item]);
+                        stats.drawn++;
+                    }
+                }
+            } else {
+                if (top + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    inside = Arrays.copyOf(inside, inside.length * 2);
+                }
+                stack[top] = left[node];
+                inside[top++] = fullyInside;
+                stack[top] = right[node];
+                inside[top++] = fullyInside;
+            }
+        }
+    }
+
+    private static float slab(int b, float[] box, float ox, float oy, float oz, float ix, float iy, float iz) {
+        float t1 = (box[b] - ox) * ix, t2 = (box[b + 3] - ox) * ix;
+        float tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (box[b + 1] - oy) * iy;
+        t2 = (box[b + 4] - oy) * iy;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (box[b + 2] - oz) * iz;
+        t2 = (box[b + 5] - oz) * iz;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        return tMax >= Math.max(tMin, 0f) ? Math.max(tMin, 0f) : Float.MAX_VALUE;
+    }
+}
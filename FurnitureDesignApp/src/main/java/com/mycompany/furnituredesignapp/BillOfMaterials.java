@@ -0,0 +1,394 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collector;
+
+/** Price of one piece of furniture by type and footprint. */
+interface PriceTable {
+    double priceOf(String type, double areaSquareMetres);
+}
+
+/**
+ * Prices from a CSV manifest with the columns
+ * {@code type,unitPrice,pricePerSquareMetre}. The bundled table is
+ * /prices.csv; another can be supplied with -Dfurnifit.prices=path. Types
+ * are matched case-insensitively and unknown types cost nothing.
+ */
+class CsvPriceTable implements PriceTable {
+    private final HashMap<String, double[]> prices = new HashMap<>();
+
+    public static CsvPriceTable loadDefault() {
+        String path = System.getProperty("furnifit.prices");
+        try (InputStream in = path != null ? new FileInputStream(path)
+                : CsvPriceTable.class.getResourceAsStream("/prices.csv")) {
+            if (in != null) {
+                return load(in);
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not load prices " + (path != null ? path : "/prices.csv") + ": " + ex.getMessage());
+        }
+        return new CsvPriceTable();
+    }
+
+    public static CsvPriceTable load(InputStream in) throws IOException {
+        CsvPriceTable table = new CsvPriceTable();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("type,")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            try {
+                table.prices.put(fields[0].trim().toLowerCase(Locale.ROOT), new double[]{
+                        Double.parseDouble(fields[1].trim()),
+                        fields.length > 2 ? Double.parseDouble(fields[2].trim()) : 0});
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+                System.err.println("Skipping price line: " + line);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public double priceOf(String type, double areaSquareMetres) {
+        double[] price = prices.get(type.toLowerCase(Locale.ROOT));
+        return price == null ? 0 : price[0] + price[1] * areaSquareMetres;
+    }
+}
+
+/**
+ * Item count, footprint area and cost per furniture type. Areas are kept in
+ * square design pixels and costs in cents, so totals are exact integers and
+ * incremental and full computations can be compared for equality.
+ */
+class BomTotals {
+    static final double PIXELS_PER_SQUARE_METRE = PreviewScene.PIXELS_PER_METRE * PreviewScene.PIXELS_PER_METRE;
+
+    // type -> {count, area in square pixels, cost in cents}
+    private final TreeMap<String, long[]> byType = new TreeMap<>();
+
+    void add(String type, long area, long cost, int sign) {
+        long[] row = byType.computeIfAbsent(type, k -> new long[3]);
+        row[0] += sign;
+        row[1] += sign * area;
+        row[2] += sign * cost;
+        if (row[0] == 0) {
+            byType.remove(type);
+        }
+    }
+
+    BomTotals merge(BomTotals other) {
+        for (Map.Entry<String, long[]> entry : other.byType.entrySet()) {
+            long[] row = byType.computeIfAbsent(entry.getKey(), k -> new long[3]);
+            for (int i = 0; i < 3; i++) {
+                row[i] += entry.getValue()[i];
+            }
+        }
+        return this;
+    }
+
+    BomTotals copy() {
+        BomTotals copy = new BomTotals();
+        for (Map.Entry<String, long[]> entry : byType.entrySet()) {
+            copy.byType.put(entry.getKey(), entry.getValue().clone());
+        }
+        return copy;
+    }
+
+    public java.util.List<String> getTypes() {
+        return new ArrayList<>(byType.keySet());
+    }
+
+    public int getCount(String type) {
+        long[] row = byType.get(type);
+        return row == null ? 0 : (int) row[0];
+    }
+
+    public double getArea(String type) {
+        long[] row = byType.get(type);
+        return row == null ? 0 : row[1] / PIXELS_PER_SQUARE_METRE;
+    }
+
+    public double getCost(String type) {
+        long[] row = byType.get(type);
+        return row == null ? 0 : row[2] / 100.0;
+    }
+
+    public int getTotalCount() {
+        long total = 0;
+        for (long[] row : byType.values()) {
+            total += row[0];
+        }
+        return (int) total;
+    }
+
+    public double getTotalArea() {
+        long total = 0;
+        for (long[] row : byType.values()) {
+            total += row[1];
+        }
+        return total / PIXELS_PER_SQUARE_METRE;
+    }
+
+    public double getTotalCost() {
+        long total = 0;
+        for (long[] row : byType.values()) {
+            total += row[2];
+        }
+        return total / 100.0;
+    }
+
+    /** Differences from another set of totals, one line per type; empty if equal. */
+    public java.util.List<String> differences(BomTotals other) {
+        ArrayList<String> differences = new ArrayList<>();
+        TreeSet<String> types = new TreeSet<>(byType.keySet());
+        types.addAll(other.byType.keySet());
+        for (String type : types) {
+            long[] a = byType.getOrDefault(type, new long[3]);
+            long[] b = other.byType.getOrDefault(type, new long[3]);
+            if (!Arrays.equals(a, b)) {
+                differences.add(String.format("%s: count %d vs %d, area %d vs %d px2, cost %d vs %d cents",
+                        type, a[0], b[0], a[1], b[1], a[2], b[2]));
+            }
+        }
+        return differences;
+    }
+}
+
+interface BillOfMaterialsListener {
+    void billChanged(BillOfMaterials bill);
+}
+
+/**
+ * Live bill of materials for a {@link DesignModel}. Each item's area and
+ * price are remembered by id, so an add, resize, rotation or removal updates
+ * its type's totals in O(1) instead of recomputing the whole design; only
+ * loading or clearing a design starts over. {@link #recompute} does the full
+ * computation in parallel from a snapshot, and {@link #audit} checks the two
+ * against each other.
+ */
+class BillOfMaterials implements DesignModelListener {
+    private final DesignModel model;
+    private final PriceTable prices;
+    private final HashMap<Long, long[]> contributions = new HashMap<>();
+    private final HashMap<Long, String> types = new HashMap<>();
+    private BomTotals totals = new BomTotals();
+    private final ArrayList<BillOfMaterialsListener> listeners = new ArrayList<>();
+
+    BillOfMaterials(DesignModel model, PriceTable prices) {
+        this.model = model;
+        this.prices = prices;
+        model.addListener(this);
+        rebuild();
+    }
+
+    public void addListener(BillOfMaterialsListener listener) {
+        listeners.add(listener);
+    }
+
+    /** The current totals. The returned object is updated in place by later edits. */
+    public BomTotals getTotals() {
+        return totals;
+    }
+
+    /** Share of the floor covered by furniture footprints, from 0 to 1 or more if pieces overlap. */
+    public double getCoverage() {
+        double floor = model.getRoomPolygon().getArea();
+        return floor > 0 ? totals.getTotalArea() / floor : 0;
+    }
+
+    @Override
+    public void designChanged(DesignChange change) {
+        switch (change.kind) {
+            case ITEM_ADDED:
+                addItem(change.item);
+                break;
+            case ITEM_TRANSFORMED:
+                removeItem(change.item.getId());
+                addItem(change.item);
+                break;
+            case ITEM_REMOVED:
+                removeItem(change.item.getId());
+                break;
+            case RESET:
+                rebuild();
+                break;
+            case ITEM_MOVED:
+                // Position does not affect counts, area or price.
+                return;
+            default:
+                break;
+        }
+        for (BillOfMaterialsListener listener : listeners) {
+            listener.billChanged(this);
+        }
+    }
+
+    private void addItem(FurnitureItem item) {
+        long area = (long) item.getWidth() * item.getHeight();
+        long cost = priceInCents(prices, item.getType(), area);
+        contributions.put(item.getId(), new long[]{area, cost});
+        types.put(item.getId(), item.getType());
+        totals.add(item.getType(), area, cost, 1);
+    }
+
+    private void removeItem(long id) {
+        long[] contribution = contributions.remove(id);
+        if (contribution != null) {
+            totals.add(types.remove(id), contribution[0], contribution[1], -1);
+        }
+    }
+
+    private void rebuild() {
+        contributions.clear();
+        types.clear();
+        totals = new BomTotals();
+        for (FurnitureItem item : model.getItems()) {
+            addItem(item);
+        }
+    }
+
+    private static long priceInCents(PriceTable prices, String type, long area) {
+        return Math.round(prices.priceOf(type, area / BomTotals.PIXELS_PER_SQUARE_METRE) * 100);
+    }
+
+    /** Computes the totals of a snapshot from scratch, splitting the items across the common pool. */
+    public static BomTotals recompute(DesignSnapshot snapshot, PriceTable prices) {
+        return snapshot.getItems().parallelStream().collect(Collector.of(
+                BomTotals::new,
+                (totals, item) -> {
+                    long area = (long) item.width * item.height;
+                    totals.add(item.type, area, priceInCents(prices, item.type, area), 1);
+                },
+                BomTotals::merge));
+    }
+
+    /**
+     * Recomputes the totals in parallel and compares them with the incremental
+     * ones. Call on the thread that edits the model; returns the differences,
+     * empty if both agree.
+     */
+    public java.util.List<String> audit() {
+        return recompute(model.snapshot(), prices).differences(totals);
+    }
+
+    /** Applies random edits to a large design and audits after each batch. */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int itemCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        String[] types = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+        Random random = new Random(7);
+        DesignModel model = new DesignModel();
+        BillOfMaterials bill = new BillOfMaterials(model, CsvPriceTable.loadDefault());
+        // Time the bill's own updates separately from the model's edits.
+        long[] updateNanos = new long[1];
+        model.removeListener(bill);
+        model.addListener(change -> {
+            long start = System.nanoTime();
+            bill.designChanged(change);
+            updateNanos[0] += System.nanoTime() - start;
+        });
+        for (int i = 0; i < itemCount; i++) {
+            model.add(new FurnitureItem(types[random.nextInt(types.length)],
+                    random.nextInt(5000), random.nextInt(5000), 40 + random.nextInt(80), 40 + random.nextInt(80)));
+        }
+
+        int failures = 0;
+        updateNanos[0] = 0;
+        for (int batch = 0; batch < 10; batch++) {
+            for (int i = 0; i < edits / 10; i++) {
+                java.util.List<FurnitureItem> items = model.getItems();
+                FurnitureItem item = items.get(random.nextInt(items.size()));
+                switch (random.nextInt(4)) {
+                    case 0: model.resize(item, random.nextBoolean() ? 1.1 : 0.9); break;
+                    case 1: model.rotate(item, 90); break;
+                    case 2: model.remove(item); break;
+                    default: model.add(new FurnitureItem(types[random.nextInt(types.length)],
+                            random.nextInt(5000), random.nextInt(5000), 80, 60));
+                }
+            }
+            java.util.List<String> differences = bill.audit();
+            failures += differences.isEmpty() ? 0 : 1;
+            differences.forEach(System.out::println);
+        }
+        long start = System.nanoTime();
+        BomTotals full = recompute(model.snapshot(), CsvPriceTable.loadDefault());
+        long recomputeNanos = System.nanoTime() - start;
+
+        System.out.printf("%d items, %d edits: %.2f us per incremental update, full parallel recompute %.1f ms%n",
+                full.getTotalCount(), edits, updateNanos[0] / 1e3 / edits, recomputeNanos / 1e6);
+        System.out.printf("total %.2f m2, cost %.2f; audits failed: %d of 10%n",
+                full.getTotalArea(), full.getTotalCost(), failures);
+    }
+}
+
+/** Table of the bill of materials with totals underneath. */
+class BillOfMaterialsPanel extends JPanel implements BillOfMaterialsListener {
+    private static final String[] COLUMNS = {"Type", "Qty", "Area m²", "Cost"};
+
+    private final BillOfMaterials bill;
+    private final JLabel totalsLabel = new JLabel();
+    private java.util.List<String> rows = new ArrayList<>();
+    private final AbstractTableModel tableModel = new AbstractTableModel() {
+        public int getRowCount() { return rows.size(); }
+        public int getColumnCount() { return COLUMNS.length; }
+        public String getColumnName(int column) { return COLUMNS[column]; }
+
+        public Object getValueAt(int row, int column) {
+            String type = rows.get(row);
+            BomTotals totals = bill.getTotals();
+            switch (column) {
+                case 0: return type;
+                case 1: return totals.getCount(type);
+                case 2: return String.format("%.2f", totals.getArea(type));
+                default: return String.format("%.2f", totals.getCost(type));
+            }
+        }
+    };
+
+    BillOfMaterialsPanel(BillOfMaterials bill) {
+        this.bill = bill;
+        setBorder(BorderFactory.createTitledBorder("Bill of Materials"));
+        setLayout(new BorderLayout(5, 5));
+        setPreferredSize(new Dimension(260, 0));
+
+        JTable table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        JButton auditButton = new JButton("Audit");
+        auditButton.addActionListener(e -> {
+            java.util.List<String> differences = bill.audit();
+            JOptionPane.showMessageDialog(this, differences.isEmpty()
+                    ? "Totals match a full recompute." : String.join("\n", differences));
+        });
+        JPanel footer = new JPanel(new BorderLayout(5, 5));
+        footer.add(totalsLabel, BorderLayout.CENTER);
+        footer.add(auditButton, BorderLayout.EAST);
+        add(footer, BorderLayout.SOUTH);
+
+        bill.addListener(this);
+        billChanged(bill);
+    }
+
+    @Override
+    public void billChanged(BillOfMaterials bill) {
+        BomTotals totals = bill.getTotals();
+        java.util.List<String> types = totals.getTypes();
+        if (types.equals(rows)) {
+            tableModel.fireTableRowsUpdated(0, rows.size() - 1);
+        } else {
+            rows = types;
+            tableModel.fireTableDataChanged();
+        }
+        totalsLabel.setText(String.format("<html>%d items, %.1f m² (%.0f%% of floor)<br>Total %.2f</html>",
+                totals.getTotalCount(), totals.getTotalArea(), bill.getCoverage() * 100, totals.getTotalCost()));
+    }
+}
@@ -0,0 +1,584 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.geom.AffineTransform;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A building plan made of many rooms, each with its own furniture, stored in
+ * one file. The file holds every room's {@link DesignData} as a separately
+ * serialized block followed by a table of contents with each room's name,
+ * position on the floor plan, dimensions and block location. Opening a
+ * building reads only the table of contents; room contents are paged in on
+ * demand and at most {@code furnifit.residentRooms} (default 32) are kept in
+ * memory. Edited rooms that get evicted are kept in serialized form until the
+ * building is saved.
+ */
+class BuildingDocument {
+    private static final int MAGIC = 0x46464244;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final ArrayList<RoomInfo> rooms = new ArrayList<>();
+    private final Map<RoomInfo, DesignData> resident;
+    private final Map<RoomInfo, byte[]> spilled = new HashMap<>();
+    private final int maxResident;
+    private File file;
+    private FileChannel channel;
+
+    BuildingDocument() {
+        this(Integer.getInteger("furnifit.residentRooms", 32));
+    }
+
+    BuildingDocument(int maxResident) {
+        this.maxResident = Math.max(1, maxResident);
+        this.resident = new LinkedHashMap<RoomInfo, DesignData>(64, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<RoomInfo, DesignData> eldest) {
+                if (size() <= BuildingDocument.this.maxResident) {
+                    return false;
+                }
+                if (eldest.getKey().modified) {
+                    spilled.put(eldest.getKey(), serialize(eldest.getValue()));
+                }
+                return true;
+            }
+        };
+    }
+
+    public static BuildingDocument open(File file) throws IOException {
+        BuildingDocument doc = new BuildingDocument();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a building file: " + file.getName());
+            }
+            long tocOffset = header.getLong();
+            long tocLength = channel.size() - tocOffset;
+            if (tocOffset < HEADER_SIZE || tocLength <= 0 || tocLength > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt building file: " + file.getName());
+            }
+            ByteBuffer toc = ByteBuffer.allocate((int) tocLength);
+            readFully(channel, toc, tocOffset);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(toc.array()));
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RoomInfo room = RoomInfo.read(in);
+                if (room.offset < HEADER_SIZE || room.offset + room.length > tocOffset) {
+                    throw new IOException("Corrupt building file: " + file.getName());
+                }
+                doc.rooms.add(room);
+            }
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        doc.file = file;
+        doc.channel = channel;
+        return doc;
+    }
+
+    public java.util.List<RoomInfo> getRooms() {
+        return Collections.unmodifiableList(rooms);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Adds a room to the right of the existing plan and returns it. */
+    public RoomInfo addRoom(String name, DesignData data) {
+        double planX = 0;
+        for (RoomInfo room : rooms) {
+            planX = Math.max(planX, room.planX + room.width + 1.0);
+        }
+        RoomInfo room = new RoomInfo(name, planX, 0);
+        rooms.add(room);
+        updateRoom(room, data);
+        return room;
+    }
+
+    /** Replaces a room's contents, e.g. after it was edited in the design panel. */
+    public synchronized void updateRoom(RoomInfo room, DesignData data) {
+        room.width = data.roomWidth;
+        room.height = data.roomHeight;
+        room.shape = data.roomShape;
+        room.color = data.roomColor.getRGB();
+        room.modified = true;
+        spilled.remove(room);
+        resident.put(room, data);
+    }
+
+    /** The room's contents if they are in memory, otherwise null. Does not touch the disk. */
+    public synchronized DesignData getResident(RoomInfo room) {
+        return resident.get(room);
+    }
+
+    public synchronized boolean isResident(RoomInfo room) {
+        return resident.containsKey(room);
+    }
+
+    public int getMaxResident() {
+        return maxResident;
+    }
+
+    /**
+     * Returns the room's contents, reading them from disk if needed. Safe to
+     * call from a background thread; the file is read with positional reads.
+     */
+    public DesignData load(RoomInfo room) throws IOException {
+        synchronized (this) {
+            DesignData existing = resident.get(room);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        DesignData data = read(room);
+        synchronized (this) {
+            DesignData existing = resident.get(room);
+            if (existing != null) {
+                return existing;
+            }
+            spilled.remove(room);
+            resident.put(room, data);
+            return data;
+        }
+    }
+
+    /**
+     * Returns a copy of the room's contents without making the room resident,
+     * e.g. to stream every room of a large building through an exporter on a
+     * background thread. A resident room is serialized under the document
+     * lock, so the copy never shares items with the one being shown or edited.
+     */
+    public DesignData read(RoomInfo room) throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            DesignData data = resident.get(room);
+            bytes = data != null ? serialize(data) : spilled.get(room);
+        }
+        if (bytes == null) {
+            if (channel == null || room.offset < 0) {
+                throw new IOException("Room " + room.name + " has no stored contents");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(room.length);
+            readFully(channel, buffer, room.offset);
+            bytes = buffer.array();
+        }
+        return deserialize(bytes);
+    }
+
+    /**
+     * Writes the building to the given file. Rooms that were never paged in
+     * are copied from the current file without being deserialized.
+     */
+    public synchronized void save(File target) throws IOException {
+        Path dir = target.getAbsoluteFile().toPath().getParent();
+        Path temp = Files.createTempFile(dir, target.getName(), ".tmp");
+        long[] offsets = new long[rooms.size()];
+        int[] lengths = new int[rooms.size()];
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            long position = HEADER_SIZE;
+            for (int i = 0; i < rooms.size(); i++) {
+                RoomInfo room = rooms.get(i);
+                offsets[i] = position;
+                DesignData data = resident.get(room);
+                byte[] bytes = data != null && room.modified ? serialize(data) : spilled.get(room);
+                if (bytes != null) {
+                    lengths[i] = bytes.length;
+                    writeFully(out, ByteBuffer.wrap(bytes), position);
+                } else if (channel != null && room.offset >= 0) {
+                    lengths[i] = room.length;
+                    for (long copied = 0; copied < room.length; ) {
+                        copied += channel.transferTo(room.offset + copied, room.length - copied,
+                                out.position(position + copied));
+                    }
+                } else if (data != null) {
+                    bytes = serialize(data);
+                    lengths[i] = bytes.length;
+                    writeFully(out, ByteBuffer.wrap(bytes), position);
+                } else {
+                    throw new IOException("Room " + room.name + " has no stored contents");
+                }
+                position += lengths[i];
+            }
+
+            ByteArrayOutputStream tocBytes = new ByteArrayOutputStream();
+            DataOutputStream toc = new DataOutputStream(tocBytes);
+            toc.writeInt(rooms.size());
+            for (int i = 0; i < rooms.size(); i++) {
+                rooms.get(i).write(toc, offsets[i], lengths[i]);
+            }
+            toc.flush();
+            writeFully(out, ByteBuffer.wrap(tocBytes.toByteArray()), position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(position).flip();
+            writeFully(out, header, 0);
+            out.force(true);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+
+        // The old file may be the target, so stop reading from it before replacing it.
+        if (channel != null) {
+            channel.close();
+        }
+        try {
+            Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            channel = file != null ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+            throw ex;
+        }
+        channel = FileChannel.open(target.toPath(), StandardOpenOption.READ);
+        file = target;
+        for (int i = 0; i < rooms.size(); i++) {
+            RoomInfo room = rooms.get(i);
+            room.offset = offsets[i];
+            room.length = lengths[i];
+            room.modified = false;
+        }
+        spilled.clear();
+    }
+
+    public synchronized void close() {
+        resident.clear();
+        spilled.clear();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                // Nothing left to read from it.
+            }
+            channel = null;
+        }
+    }
+
+    private static byte[] serialize(DesignData data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(data);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static DesignData deserialize(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (DesignData) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Unreadable room: " + ex.getMessage(), ex);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
+
+/** Table-of-contents entry for one room: enough to draw its outline without loading it. */
+class RoomInfo {
+    String name;
+    double planX, planY;
+    double width = 5.0, height = 3.0;
+    String shape = "Rectangle";
+    int color = Color.WHITE.getRGB();
+    long offset = -1;
+    int length;
+    boolean modified;
+
+    RoomInfo(String name, double planX, double planY) {
+        this.name = name;
+        this.planX = planX;
+        this.planY = planY;
+    }
+
+    void write(DataOutputStream out, long offset, int length) throws IOException {
+        out.writeUTF(name);
+        out.writeDouble(planX);
+        out.writeDouble(planY);
+        out.writeDouble(width);
+        out.writeDouble(height);
+        out.writeUTF(shape);
+        out.writeInt(color);
+        out.writeLong(offset);
+        out.writeInt(length);
+    }
+
+    static RoomInfo read(DataInputStream in) throws IOException {
+        RoomInfo room = new RoomInfo(in.readUTF(), in.readDouble(), in.readDouble());
+        room.width = in.readDouble();
+        room.height = in.readDouble();
+        room.shape = in.readUTF();
+        room.color = in.readInt();
+        room.offset = in.readLong();
+        room.length = in.readInt();
+        return room;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
+
+interface RoomOpenListener {
+    void onRoomOpened(RoomInfo room, DesignData data);
+}
+
+/**
+ * Pannable, zoomable floor plan of a building. Room outlines come from the
+ * table of contents; furniture is drawn only for rooms near the viewport,
+ * which are paged in on a background thread as the view reaches them. When
+ * zoomed out far enough that more rooms are visible than may be resident,
+ * only outlines are drawn. Double-click a room to edit it.
+ */
+class BuildingPanel extends JPanel {
+    private static final double MIN_SCALE = 2;
+    private static final double MAX_SCALE = 200;
+
+    private BuildingDocument document;
+    private double scale = 20;
+    private double originX = 40, originY = 40;
+    private Point dragStart = null;
+    private RoomInfo activeRoom = null;
+    private final Set<RoomInfo> loading = new HashSet<>();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "room-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ArrayList<RoomOpenListener> openListeners = new ArrayList<>();
+
+    public BuildingPanel() {
+        setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        setBackground(Color.LIGHT_GRAY);
+
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2 && SwingUtilities.isLeftMouseButton(e)) {
+                    RoomInfo room = roomAt(e.getPoint());
+                    if (room != null) {
+                        openRoom(room);
+                    }
+                }
+            }
+        });
+
+        addMouseMotionListener(new MouseAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart != null) {
+                    originX += e.getX() - dragStart.x;
+                    originY += e.getY() - dragStart.y;
+                    dragStart = e.getPoint();
+                    repaint();
+                }
+            }
+        });
+
+        addMouseWheelListener(e -> {
+            double factor = Math.pow(1.1, -e.getPreciseWheelRotation());
+            double newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+            originX = e.getX() - (e.getX() - originX) * newScale / scale;
+            originY = e.getY() - (e.getY() - originY) * newScale / scale;
+            scale = newScale;
+            repaint();
+        });
+    }
+
+    public void setDocument(BuildingDocument document) {
+        this.document = document;
+        synchronized (loading) {
+            loading.clear();
+        }
+        activeRoom = null;
+        scale = 20;
+        originX = originY = 40;
+        repaint();
+    }
+
+    public BuildingDocument getDocument() {
+        return document;
+    }
+
+    public void setActiveRoom(RoomInfo room) {
+        activeRoom = room;
+        repaint();
+    }
+
+    public void addRoomOpenListener(RoomOpenListener listener) {
+        openListeners.add(listener);
+    }
+
+    private void openRoom(RoomInfo room) {
+        try {
+            DesignData data = document.load(room);
+            activeRoom = room;
+            for (RoomOpenListener listener : openListeners) {
+                listener.onRoomOpened(room, data);
+            }
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "Error loading room: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private RoomInfo roomAt(Point p) {
+        if (document == null) {
+            return null;
+        }
+        java.util.List<RoomInfo> rooms = document.getRooms();
+        for (int i = rooms.size() - 1; i >= 0; i--) {
+            if (screenBounds(rooms.get(i)).contains(p)) {
+                return rooms.get(i);
+            }
+        }
+        return null;
+    }
+
+    private Rectangle screenBounds(RoomInfo room) {
+        int x = (int) Math.floor(originX + room.planX * scale);
+        int y = (int) Math.floor(originY + room.planY * scale);
+        return new Rectangle(x, y, (int) Math.ceil(room.width * scale), (int) Math.ceil(room.height * scale));
+    }
+
+    private void requestLoad(RoomInfo room) {
+        synchronized (loading) {
+            if (!loading.add(room)) {
+                return;
+            }
+        }
+        BuildingDocument doc = document;
+        loader.execute(() -> {
+            try {
+                if (doc == document) {
+                    doc.load(room);
+                }
+            } catch (IOException ex) {
+                System.err.println("Could not load room " + room.name + ": " + ex.getMessage());
+            }
+            SwingUtilities.invokeLater(() -> {
+                synchronized (loading) {
+                    loading.remove(room);
+                }
+                if (doc == document) {
+                    Rectangle bounds = screenBounds(room);
+                    repaint(bounds.x - 1, bounds.y - 1, bounds.width + 2, bounds.height + 2);
+                }
+            });
+        });
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        if (document == null) {
+            g2d.drawString("No building open", 20, 20);
+            return;
+        }
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Rooms within half a screen of the viewport are paged in ahead of time.
+        Rectangle view = new Rectangle(0, 0, getWidth(), getHeight());
+        Rectangle prefetch = new Rectangle(-getWidth() / 2, -getHeight() / 2, getWidth() * 2, getHeight() * 2);
+        Rectangle clip = g2d.getClipBounds();
+        ArrayList<RoomInfo> visible = new ArrayList<>();
+        ArrayList<RoomInfo> nearby = new ArrayList<>();
+        for (RoomInfo room : document.getRooms()) {
+            Rectangle bounds = screenBounds(room);
+            if (bounds.intersects(view)) {
+                visible.add(room);
+            } else if (bounds.intersects(prefetch)) {
+                nearby.add(room);
+            }
+        }
+        boolean detail = visible.size() <= document.getMaxResident();
+        if (detail) {
+            for (RoomInfo room : visible) {
+                if (!document.isResident(room)) {
+                    requestLoad(room);
+                }
+            }
+            for (int i = 0; i < nearby.size() && visible.size() + i < document.getMaxResident(); i++) {
+                if (!document.isResident(nearby.get(i))) {
+                    requestLoad(nearby.get(i));
+                }
+            }
+        }
+
+        for (RoomInfo room : visible) {
+            Rectangle bounds = screenBounds(room);
+            if (clip != null && !clip.intersects(bounds)) {
+                continue;
+            }
+            g2d.setColor(new Color(room.color));
+            g2d.fill(bounds);
+            if (detail) {
+                DesignData data = document.getResident(room);
+                if (data != null) {
+                    drawFurniture(g2d, room, data);
+                }
+            }
+            g2d.setColor(room == activeRoom ? Color.RED : Color.BLACK);
+            g2d.setStroke(new BasicStroke(room == activeRoom ? 2 : 1));
+            g2d.draw(bounds);
+            if (bounds.width > 40) {
+                g2d.drawString(room.name, bounds.x + 4, bounds.y + 14);
+            }
+        }
+
+        g2d.setColor(Color.BLACK);
+        g2d.drawString(String.format("%d rooms, %d visible%s", document.getRooms().size(), visible.size(),
+                detail ? "" : " (zoom in to see furniture)"), 10, getHeight() - 15);
+    }
+
+    private void drawFurniture(Graphics2D g2d, RoomInfo room, DesignData data) {
+        AffineTransform oldTransform = g2d.getTransform();
+        double pixelScale = scale / PreviewScene.PIXELS_PER_METRE;
+        g2d.translate(originX + room.planX * scale, originY + room.planY * scale);
+        g2d.scale(pixelScale, pixelScale);
+        g2d.translate(-PreviewScene.ROOM_ORIGIN, -PreviewScene.ROOM_ORIGIN);
+        for (FurnitureItem item : data.furnitureItems) {
+            AffineTransform itemTransform = g2d.getTransform();
+            g2d.rotate(Math.toRadians(item.getRotation()),
+                    item.getX() + item.getWidth() / 2, item.getY() + item.getHeight() / 2);
+            g2d.setColor(FurnitureItem.defaultColor(item.getType()));
+            g2d.fillRect(item.getX(), item.getY(), item.getWidth(), item.getHeight());
+            g2d.setTransform(itemTransform);
+        }
+        g2d.setTransform(oldTransform);
+    }
+}
@@ -0,0 +1,271 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Furniture catalog loaded from a CSV manifest with the columns
+ * {@code sku,name,type,icon,tags}. The bundled manifest is /catalog.csv; a
+ * larger one can be supplied with -Dfurnifit.catalog=path.
+ */
+class Catalog {
+    private final ArrayList<CatalogEntry> entries = new ArrayList<>();
+    private CatalogIndex index;
+
+    public static Catalog loadDefault() {
+        String path = System.getProperty("furnifit.catalog");
+        try (InputStream in = path != null ? new FileInputStream(path)
+                : Catalog.class.getResourceAsStream("/catalog.csv")) {
+            if (in != null) {
+                return load(in);
+            }
+        } catch (IOException ex) {
+            System.err.println("Could not load catalog " + (path != null ? path : "/catalog.csv") + ": " + ex.getMessage());
+        }
+        return new Catalog();
+    }
+
+    public static Catalog load(InputStream in) throws IOException {
+        Catalog catalog = new Catalog();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line;
+        boolean header = true;
+        while ((line = reader.readLine()) != null) {
+            if (header) {
+                header = false;
+                if (line.startsWith("sku,")) {
+                    continue;
+                }
+            }
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",", 5);
+            if (fields.length < 3) {
+                continue;
+            }
+            String icon = fields.length > 3 && !fields[3].isBlank() ? fields[3].trim()
+                    : "/" + fields[2].trim().toLowerCase() + ".png";
+            String tags = fields.length > 4 ? fields[4].trim() : "";
+            catalog.entries.add(new CatalogEntry(fields[0].trim(), fields[1].trim(), fields[2].trim(),
+                    icon.intern(), tags));
+        }
+        catalog.entries.trimToSize();
+        return catalog;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public CatalogEntry get(int i) {
+        return entries.get(i);
+    }
+
+    public synchronized CatalogIndex getIndex() {
+        if (index == null) {
+            index = new CatalogIndex(entries);
+        }
+        return index;
+    }
+}
+
+class CatalogEntry {
+    final String sku;
+    final String name;
+    final String type;
+    final String icon;
+    final String tags;
+
+    CatalogEntry(String sku, String name, String type, String icon, String tags) {
+        this.sku = sku;
+        this.name = name;
+        this.type = type;
+        this.icon = icon;
+        this.tags = tags;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
+
+/**
+ * Token index over sku, name, type and tags. Tokens are kept sorted so that
+ * every query word is matched as a prefix with two binary searches; the
+ * postings of the matching token range are unioned, and the words are
+ * intersected.
+ */
+class CatalogIndex {
+    private final String[] tokens;
+    private final int[][] postings;
+    private final int size;
+
+    CatalogIndex(java.util.List<CatalogEntry> entries) {
+        size = entries.size();
+        HashMap<String, IntList> map = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            CatalogEntry entry = entries.get(i);
+            for (String token : tokenize(entry.sku + " " + entry.name + " " + entry.type + " " + entry.tags)) {
+                IntList list = map.computeIfAbsent(token, k -> new IntList());
+                if (list.size == 0 || list.values[list.size - 1] != i) {
+                    list.add(i);
+                }
+            }
+        }
+        tokens = map.keySet().toArray(new String[0]);
+        Arrays.sort(tokens);
+        postings = new int[tokens.length][];
+        for (int t = 0; t < tokens.length; t++) {
+            IntList list = map.get(tokens[t]);
+            postings[t] = Arrays.copyOf(list.values, list.size);
+        }
+    }
+
+    /** Indices of matching entries in catalog order; all entries for a blank query. */
+    public int[] search(String query) {
+        java.util.List<String> words = tokenize(query);
+        if (words.isEmpty()) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        BitSet result = null;
+        for (String word : words) {
+            BitSet matches = new BitSet(size);
+            int from = lowerBound(word);
+            for (int t = from; t < tokens.length && tokens[t].startsWith(word); t++) {
+                for (int entry : postings[t]) {
+                    matches.set(entry);
+                }
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.and(matches);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result.stream().toArray();
+    }
+
+    private int lowerBound(String key) {
+        int lo = 0, hi = tokens.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (tokens[mid].compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static java.util.List<String> tokenize(String text) {
+        ArrayList<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private static class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
+
+/**
+ * Decodes and scales catalog thumbnails off the EDT. Only icons requested by
+ * visible cells are loaded, the most recent requests first, and decoded
+ * images are kept in a bounded LRU cache keyed by icon path, so memory does
+ * not grow with the catalog.
+ */
+class ThumbnailLoader {
+    private static final int CACHE_SIZE = 256;
+    private static final int MAX_PENDING = 128;
+
+    private final int size;
+    private final Map<String, Image> cache = new LinkedHashMap<String, Image>(64, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final LinkedBlockingDeque<String> pending = new LinkedBlockingDeque<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    private final Consumer<String> onLoaded;
+
+    ThumbnailLoader(int size, Consumer<String> onLoaded) {
+        this.size = size;
+        this.onLoaded = onLoaded;
+        Thread worker = new Thread(this::run, "thumbnail-loader");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Returns the cached thumbnail, or null after queueing it for loading. Call on the EDT. */
+    public Image get(String icon) {
+        Image image = cache.get(icon);
+        if (image == null && !failed.contains(icon) && queued.add(icon)) {
+            pending.addFirst(icon);
+            while (pending.size() > MAX_PENDING) {
+                String dropped = pending.pollLast();
+                if (dropped != null) {
+                    queued.remove(dropped);
+                }
+            }
+        }
+        return image;
+    }
+
+    private void run() {
+        while (true) {
+            String icon;
+            try {
+                icon = pending.takeFirst();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            Image image = decode(icon);
+            SwingUtilities.invokeLater(() -> {
+                queued.remove(icon);
+                if (image != null) {
+                    cache.put(icon, image);
+                } else {
+                    failed.add(icon);
+                }
+                onLoaded.accept(icon);
+            });
+        }
+    }
+
+    private Image decode(String icon) {
+        return SpriteCache.shared().load(icon, size, size);
+    }
+}
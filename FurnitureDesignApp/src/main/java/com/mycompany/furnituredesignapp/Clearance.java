@@ -0,0 +1,585 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/** A place where the free floor is narrower than the required walkway. */
+class ClearanceSpot {
+    /** Extent of the narrow area in room metres. */
+    final Rectangle2D.Double area;
+    /** Widest gap found in the area, in metres. */
+    final double width;
+
+    ClearanceSpot(Rectangle2D.Double area, double width) {
+        this.area = area;
+        this.width = width;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.0f cm gap at %.1f, %.1f m", width * 100, area.getCenterX(), area.getCenterY());
+    }
+}
+
+interface ClearanceListener {
+    /** The analysis changed inside the given area of the design panel. */
+    void clearanceChanged(ClearanceAnalyzer analyzer, Rectangle dirtyPixels);
+}
+
+/**
+ * Checks that people can walk between the furniture. The floor is rasterized
+ * into cells, blocked where there is a wall or furniture, and a Euclidean
+ * distance transform gives each free cell its distance to the nearest
+ * obstacle. A cell is walkable if a disc as wide as the required walkway fits
+ * over it without touching anything (a morphological opening, done with a
+ * second distance transform from the cells where such a disc can be centred).
+ * Free cells that are not walkable but still wider than a crack are reported
+ * as violations.
+ *
+ * <p>Both transforms are the separable exact algorithm of Felzenszwalb and
+ * Huttenlocher, run column by column and then row by row; the columns and rows
+ * of large areas are processed in parallel. Distances are only tracked up to
+ * a little more than the walkway radius, so an edit can only change results
+ * within a fixed margin of the edited furniture, and a move recomputes just
+ * that window. Narrow spots are connected groups of violating cells, each
+ * cell labelled with its group; a move relabels only the groups that reach
+ * the recomputed window and keeps the others.
+ */
+class ClearanceAnalyzer implements DesignModelListener {
+    /** Gaps narrower than this are treated as cracks between pieces, not walkways. */
+    static final double MIN_GAP = 0.3;
+    private static final int INF = 1 << 28;
+    private static final int PARALLEL_CELLS = 1 << 16;
+
+    private final DesignModel model;
+    private final double cellSize;
+    private final double walkway;
+    private final ArrayList<ClearanceListener> listeners = new ArrayList<>();
+
+    // Grid in cells of cellSize metres, padded by one blocked cell on each side.
+    private double originX, originY;
+    private int columns, rows;
+    // Truncation radius and update margin, in cells.
+    private int margin;
+    private int clamp;
+    private boolean[] wall;
+    private int[] itemCount;
+    private int[] obstacleDistance;
+    private int[] centreDistance;
+    private boolean[] violation;
+    // Group of each violating cell, 0 for none, and the groups by label.
+    private int[] component;
+    private final HashMap<Integer, SpotComponent> components = new HashMap<>();
+    private int nextComponent = 1;
+    private BufferedImage heatmap;
+    private java.util.List<ClearanceSpot> spots = Collections.emptyList();
+
+    ClearanceAnalyzer(DesignModel model, double cellSize, double walkway) {
+        this.model = model;
+        this.cellSize = cellSize;
+        this.walkway = walkway;
+        model.addListener(this);
+        rebuild();
+    }
+
+    /** Cell size from -Dfurnifit.clearanceCell (metres, default 0.05) and a 90 cm walkway. */
+    ClearanceAnalyzer(DesignModel model) {
+        this(model, Double.parseDouble(System.getProperty("furnifit.clearanceCell", "0.05")), 0.9);
+    }
+
+    public void addListener(ClearanceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void dispose() {
+        model.removeListener(this);
+    }
+
+    public double getWalkway() {
+        return walkway;
+    }
+
+    /** Narrow spots, narrowest first. */
+    public java.util.List<ClearanceSpot> getSpots() {
+        return spots;
+    }
+
+    /** One pixel per cell: red for violations, shading from amber to clear with growing clearance. */
+    public BufferedImage getHeatmap() {
+        return heatmap;
+    }
+
+    /** Where the heatmap goes on the design panel, in panel pixels. */
+    public Rectangle2D.Double getHeatmapBounds() {
+        double scale = PreviewScene.PIXELS_PER_METRE;
+        return new Rectangle2D.Double(PreviewScene.ROOM_ORIGIN + originX * scale, PreviewScene.ROOM_ORIGIN + originY * scale,
+                columns * cellSize * scale, rows * cellSize * scale);
+    }
+
+    @Override
+    public void designChanged(DesignChange change) {
+        switch (change.kind) {
+            case ITEM_ADDED:
+                update(stamp(change.item.getBounds(), 1), null);
+                break;
+            case ITEM_MOVED:
+            case ITEM_TRANSFORMED:
+                update(stamp(change.previousBounds, -1), stamp(change.item.getBounds(), 1));
+                break;
+            case ITEM_REMOVED:
+                update(stamp(change.previousBounds, -1), null);
+                break;
+            default:
+                rebuild();
+        }
+    }
+
+    /** Recomputes everything, e.g. after the room changed. */
+    public void rebuild() {
+        RoomPolygon polygon = model.getRoomPolygon();
+        originX = polygon.getMinX() - cellSize;
+        originY = polygon.getMinY() - cellSize;
+        columns = (int) Math.ceil((polygon.getMaxX() - polygon.getMinX()) / cellSize) + 2;
+        rows = (int) Math.ceil((polygon.getMaxY() - polygon.getMinY()) / cellSize) + 2;
+        margin = (int) Math.ceil(walkway / 2 / cellSize) + 2;
+        clamp = margin * margin;
+        int cells = columns * rows;
+        wall = new boolean[cells];
+        itemCount = new int[cells];
+        obstacleDistance = new int[cells];
+        centreDistance = new int[cells];
+        violation = new boolean[cells];
+        component = new int[cells];
+        components.clear();
+        heatmap = new BufferedImage(columns, rows, BufferedImage.TYPE_INT_ARGB);
+
+        rowRange(0, rows, cells).forEach(row -> {
+            for (int column = 0; column < columns; column++) {
+                wall[row * columns + column] = !polygon.contains(originX + (column + 0.5) * cellSize,
+                        originY + (row + 0.5) * cellSize);
+            }
+        });
+        for (FurnitureItem item : model.getItems()) {
+            stamp(item.getBounds(), 1);
+        }
+        recompute(new Rectangle(0, 0, columns, rows));
+    }
+
+    // Adds or removes an item's footprint from the occupancy counts; returns the
+    // cells covered, or null if none are.
+    private Rectangle stamp(Rectangle pixels, int delta) {
+        double scale = PreviewScene.PIXELS_PER_METRE;
+        int c0 = cellFrom((pixels.x - PreviewScene.ROOM_ORIGIN) / scale - originX);
+        int c1 = cellFrom((pixels.x + pixels.width - PreviewScene.ROOM_ORIGIN) / scale - originX);
+        int r0 = cellFrom((pixels.y - PreviewScene.ROOM_ORIGIN) / scale - originY);
+        int r1 = cellFrom((pixels.y + pixels.height - PreviewScene.ROOM_ORIGIN) / scale - originY);
+        c0 = Math.max(c0, 0);
+        r0 = Math.max(r0, 0);
+        c1 = Math.min(c1, columns);
+        r1 = Math.min(r1, rows);
+        if (c0 >= c1 || r0 >= r1) {
+            return null;
+        }
+        for (int row = r0; row < r1; row++) {
+            for (int column = c0; column < c1; column++) {
+                itemCount[row * columns + column] += delta;
+            }
+        }
+        return new Rectangle(c0, r0, c1 - c0, r1 - r0);
+    }
+
+    // First cell whose centre is at or past the given offset in metres.
+    private int cellFrom(double metres) {
+        return (int) Math.ceil(metres / cellSize - 0.5);
+    }
+
+    private void update(Rectangle a, Rectangle b) {
+        Rectangle changed = a == null ? b : b == null ? a : a.union(b);
+        if (changed != null) {
+            recompute(changed);
+        }
+    }
+
+    /**
+     * Obstacle distances can change up to one margin from the changed cells,
+     * and with them the disc centres; coverage by those discs can change up
+     * to one further margin. Each transform reads one more margin around the
+     * cells it writes, which holds every obstacle close enough to matter.
+     */
+    private void recompute(Rectangle changed) {
+        Rectangle grid = new Rectangle(0, 0, columns, rows);
+        Rectangle distances = grow(changed, margin).intersection(grid);
+        transform(distances, grow(distances, margin).intersection(grid), obstacleDistance, this::isBlocked);
+
+        Rectangle coverage = grow(changed, 2 * margin).intersection(grid);
+        transform(coverage, grow(coverage, margin).intersection(grid), centreDistance, this::isCentre);
+
+        // Groups touching the window, or next to it where a new violation could join them, are redone.
+        java.util.List<Rectangle> relabel = clearComponents(grow(coverage, 1).intersection(grid));
+        relabel.add(coverage);
+
+        double radius = walkway / 2;
+        double minClearance = MIN_GAP / 2;
+        int[] pixels = ((DataBufferInt) heatmap.getRaster().getDataBuffer()).getData();
+        rowRange(coverage.y, coverage.y + coverage.height, coverage.width * coverage.height).forEach(row -> {
+            for (int column = coverage.x; column < coverage.x + coverage.width; column++) {
+                int cell = row * columns + column;
+                double clearance = clearance(cell);
+                boolean free = !isBlocked(cell);
+                boolean walkable = Math.sqrt(centreDistance[cell]) * cellSize <= radius;
+                violation[cell] = free && !walkable && clearance >= minClearance;
+                pixels[cell] = !free ? 0 : violation[cell] ? 0xA0E02020 : heatColor(clearance / radius);
+            }
+        });
+        labelComponents(relabel);
+
+        double scale = PreviewScene.PIXELS_PER_METRE;
+        Rectangle dirty = new Rectangle(
+                (int) Math.floor(PreviewScene.ROOM_ORIGIN + (originX + coverage.x * cellSize) * scale) - 1,
+                (int) Math.floor(PreviewScene.ROOM_ORIGIN + (originY + coverage.y * cellSize) * scale) - 1,
+                (int) Math.ceil(coverage.width * cellSize * scale) + 2,
+                (int) Math.ceil(coverage.height * cellSize * scale) + 2);
+        for (ClearanceListener listener : listeners) {
+            listener.clearanceChanged(this, dirty);
+        }
+    }
+
+    private static int heatColor(double ratio) {
+        if (ratio >= 1) {
+            return 0;
+        }
+        int alpha = (int) (110 * (1 - ratio));
+        int green = (int) (140 + 100 * ratio);
+        return (alpha << 24) | (255 << 16) | (green << 8) | 40;
+    }
+
+    private static Rectangle grow(Rectangle r, int by) {
+        return new Rectangle(r.x - by, r.y - by, r.width + 2 * by, r.height + 2 * by);
+    }
+
+    private IntStream rowRange(int from, int to, int cells) {
+        IntStream range = IntStream.range(from, to);
+        return cells >= PARALLEL_CELLS ? range.parallel() : range;
+    }
+
+    private boolean isBlocked(int cell) {
+        return wall[cell] || itemCount[cell] > 0;
+    }
+
+    private boolean isCentre(int cell) {
+        return !isBlocked(cell) && clearance(cell) >= walkway / 2;
+    }
+
+    // Distance from the cell centre to the nearest obstacle's edge, in metres.
+    private double clearance(int cell) {
+        return Math.max(0, Math.sqrt(obstacleDistance[cell]) - 0.5) * cellSize;
+    }
+
+    private interface CellTest {
+        boolean test(int cell);
+    }
+
+    /**
+     * Squared distance, in cells and clamped to the margin, from every cell of
+     * target to the nearest source cell in window.
+     */
+    private void transform(Rectangle target, Rectangle window, int[] result, CellTest source) {
+        int width = window.width, height = window.height;
+        int[] vertical = new int[width * height];
+        IntStream columnRange = IntStream.range(0, width);
+        (width * height >= PARALLEL_CELLS ? columnRange.parallel() : columnRange).forEach(i -> {
+            int[] f = new int[height];
+            int[] d = new int[height];
+            for (int j = 0; j < height; j++) {
+                f[j] = source.test((window.y + j) * columns + window.x + i) ? 0 : INF;
+            }
+            distance1D(f, d, height, new int[height], new double[height + 1]);
+            for (int j = 0; j < height; j++) {
+                vertical[j * width + i] = d[j];
+            }
+        });
+        rowRange(target.y, target.y + target.height, width * height).forEach(row -> {
+            int j = row - window.y;
+            int[] f = new int[width];
+            int[] d = new int[width];
+            System.arraycopy(vertical, j * width, f, 0, width);
+            distance1D(f, d, width, new int[width], new double[width + 1]);
+            for (int column = target.x; column < target.x + target.width; column++) {
+                result[row * columns + column] = Math.min(clamp, d[column - window.x]);
+            }
+        });
+    }
+
+    // Lower envelope of parabolas rooted at (q, f[q]): d[q] = min over p of (q - p)^2 + f[p].
+    private static void distance1D(int[] f, int[] d, int n, int[] v, double[] z) {
+        int k = -1;
+        for (int q = 0; q < n; q++) {
+            if (f[q] >= INF) {
+                continue;
+            }
+            double s = Double.NEGATIVE_INFINITY;
+            while (k >= 0) {
+                int p = v[k];
+                s = ((f[q] + (double) q * q) - (f[p] + (double) p * p)) / (2.0 * (q - p));
+                if (s > z[k]) {
+                    break;
+                }
+                k--;
+            }
+            k++;
+            v[k] = q;
+            z[k] = k == 0 ? Double.NEGATIVE_INFINITY : s;
+            z[k + 1] = Double.POSITIVE_INFINITY;
+        }
+        if (k < 0) {
+            Arrays.fill(d, 0, n, INF);
+            return;
+        }
+        int envelope = 0;
+        for (int q = 0; q < n; q++) {
+            while (z[envelope + 1] < q) {
+                envelope++;
+            }
+            long dq = q - v[envelope];
+            d[q] = (int) Math.min(INF, dq * dq + f[v[envelope]]);
+        }
+    }
+
+    /** A connected group of violating cells; reported as a spot once it has four cells. */
+    private static class SpotComponent {
+        int c0, r0, c1, r1;
+        ClearanceSpot spot;
+    }
+
+    // Unlabels every group with a cell in the area and returns their extents.
+    private java.util.List<Rectangle> clearComponents(Rectangle area) {
+        HashSet<Integer> labels = new HashSet<>();
+        for (int row = area.y; row < area.y + area.height; row++) {
+            for (int column = area.x; column < area.x + area.width; column++) {
+                int label = component[row * columns + column];
+                if (label != 0) {
+                    labels.add(label);
+                }
+            }
+        }
+        ArrayList<Rectangle> cleared = new ArrayList<>();
+        for (int label : labels) {
+            SpotComponent group = components.remove(label);
+            for (int row = group.r0; row <= group.r1; row++) {
+                for (int column = group.c0; column <= group.c1; column++) {
+                    if (component[row * columns + column] == label) {
+                        component[row * columns + column] = 0;
+                    }
+                }
+            }
+            cleared.add(new Rectangle(group.c0, group.r0, group.c1 - group.c0 + 1, group.r1 - group.r0 + 1));
+        }
+        return cleared;
+    }
+
+    // Labels the unlabelled violating cells in the areas, flood-filling each new group.
+    private void labelComponents(java.util.List<Rectangle> areas) {
+        int[] stack = new int[64];
+        for (Rectangle area : areas) {
+            for (int row = area.y; row < area.y + area.height; row++) {
+                for (int column = area.x; column < area.x + area.width; column++) {
+                    int start = row * columns + column;
+                    if (!violation[start] || component[start] != 0) {
+                        continue;
+                    }
+                    int label = nextComponent++;
+                    SpotComponent group = new SpotComponent();
+                    group.c0 = columns;
+                    group.r0 = rows;
+                    int size = 0, top = 0;
+                    double widest = 0;
+                    component[start] = label;
+                    stack[top++] = start;
+                    while (top > 0) {
+                        int cell = stack[--top];
+                        int x = cell % columns, y = cell / columns;
+                        size++;
+                        group.c0 = Math.min(group.c0, x);
+                        group.c1 = Math.max(group.c1, x);
+                        group.r0 = Math.min(group.r0, y);
+                        group.r1 = Math.max(group.r1, y);
+                        widest = Math.max(widest, 2 * clearance(cell));
+                        int[] neighbours = {x > 0 ? cell - 1 : -1, x < columns - 1 ? cell + 1 : -1,
+                                cell - columns, cell + columns};
+                        for (int next : neighbours) {
+                            if (next >= 0 && next < violation.length && violation[next] && component[next] == 0) {
+                                component[next] = label;
+                                if (top == stack.length) {
+                                    stack = Arrays.copyOf(stack, top * 2);
+                                }
+                                stack[top++] = next;
+                            }
+                        }
+                    }
+                    if (size >= 4) {
+                        group.spot = new ClearanceSpot(new Rectangle2D.Double(originX + group.c0 * cellSize,
+                                originY + group.r0 * cellSize, (group.c1 - group.c0 + 1) * cellSize,
+                                (group.r1 - group.r0 + 1) * cellSize), widest);
+                    }
+                    components.put(label, group);
+                }
+            }
+        }
+        ArrayList<ClearanceSpot> found = new ArrayList<>();
+        for (SpotComponent group : components.values()) {
+            if (group.spot != null) {
+                found.add(group.spot);
+            }
+        }
+        found.sort(Comparator.comparingDouble(spot -> spot.width));
+        spots = found;
+    }
+
+    /**
+     * Compares the incrementally maintained grids with a full recompute; returns
+     * the mismatching cells, plus one if the narrow spots differ.
+     */
+    int audit() {
+        int[] distances = obstacleDistance.clone();
+        int[] centres = centreDistance.clone();
+        boolean[] violations = violation.clone();
+        Set<String> incremental = spotKeys();
+        rebuild();
+        int mismatches = incremental.equals(spotKeys()) ? 0 : 1;
+        for (int cell = 0; cell < distances.length; cell++) {
+            if (distances[cell] != obstacleDistance[cell] || centres[cell] != centreDistance[cell]
+                    || violations[cell] != violation[cell]) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    private Set<String> spotKeys() {
+        HashSet<String> keys = new HashSet<>();
+        for (ClearanceSpot spot : spots) {
+            keys.add(spot.area + " " + spot.width);
+        }
+        return keys;
+    }
+
+    /**
+     * Drags random furniture around a furnished room and reports the time of a
+     * full analysis and of the incremental update after each move, auditing
+     * the incremental result against a full recompute. Arguments: cell size in
+     * metres, number of moves and room width in metres (default 12); the room
+     * is three quarters as deep and furnished as densely at any size.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        double cell = args.length > 0 ? Double.parseDouble(args[0]) : 0.05;
+        int moves = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        double width = args.length > 2 ? Double.parseDouble(args[2]) : 12;
+        double depth = width * 0.75;
+        DesignModel model = new DesignModel();
+        model.setRoom(width, depth, String.format(Locale.ROOT, "Polygon: 0,0 %s,0 %s,%s 0,%s; %s,%s %s,%s %s,%s %s,%s",
+                width, width, depth, depth, width / 2 - 0.5, depth / 2 - 0.5, width / 2 + 0.5, depth / 2 - 0.5,
+                width / 2 + 0.5, depth / 2 + 0.5, width / 2 - 0.5, depth / 2 + 0.5), Color.WHITE);
+        String[] types = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+        Random random = new Random(3);
+        int spanX = (int) ((width - 2) * PreviewScene.PIXELS_PER_METRE), spanY = (int) ((depth - 2) * PreviewScene.PIXELS_PER_METRE);
+        for (int i = 0; i < (int) (40 * width * depth / 108); i++) {
+            model.add(new FurnitureItem(types[random.nextInt(types.length)],
+                    60 + random.nextInt(spanX), 60 + random.nextInt(spanY), 40 + random.nextInt(80), 40 + random.nextInt(80)));
+        }
+
+        long start = System.nanoTime();
+        ClearanceAnalyzer analyzer = new ClearanceAnalyzer(model, cell, 0.9);
+        for (int i = 0; i < 4; i++) {
+            analyzer.rebuild();
+        }
+        start = System.nanoTime();
+        analyzer.rebuild();
+        double full = (System.nanoTime() - start) / 1e6;
+
+        long[] samples = new long[moves];
+        int failedAudits = 0;
+        for (int i = 0; i < moves; i++) {
+            java.util.List<FurnitureItem> items = model.getItems();
+            FurnitureItem item = items.get(random.nextInt(items.size()));
+            start = System.nanoTime();
+            model.move(item, random.nextInt(21) - 10, random.nextInt(21) - 10);
+            samples[i] = System.nanoTime() - start;
+            if (i % 200 == 199 && analyzer.audit() != 0) {
+                failedAudits++;
+            }
+        }
+        Arrays.sort(samples);
+        System.out.printf("%dx%d cells at %.0f cm: full analysis %.1f ms; per move p50 %.2f ms, p99 %.2f ms%n",
+                analyzer.columns, analyzer.rows, cell * 100, full,
+                samples[moves / 2] / 1e6, samples[(int) (moves * 0.99)] / 1e6);
+        System.out.printf("%d narrow spots; audits failed: %d of %d%n",
+                analyzer.getSpots().size(), failedAudits, moves / 200);
+    }
+}
+
+/** Toggles the clearance overlay and lists the spots that are too narrow. */
+class ClearancePanel extends JPanel implements ClearanceListener {
+    private final DesignPanel designPanel;
+    private final DefaultListModel<ClearanceSpot> spotModel = new DefaultListModel<>();
+    private final JLabel summaryLabel = new JLabel(" ");
+    private ClearanceAnalyzer analyzer;
+
+    ClearancePanel(DesignPanel designPanel) {
+        this.designPanel = designPanel;
+        setBorder(BorderFactory.createTitledBorder("Walkway Clearance"));
+        setLayout(new BorderLayout(5, 5));
+        setPreferredSize(new Dimension(260, 200));
+
+        JCheckBox showBox = new JCheckBox("Show 90 cm clearance");
+        showBox.addActionListener(e -> setAnalyzing(showBox.isSelected()));
+        add(showBox, BorderLayout.NORTH);
+
+        JList<ClearanceSpot> list = new JList<>(spotModel);
+        list.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                designPanel.highlightClearanceSpot(list.getSelectedValue());
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    private void setAnalyzing(boolean on) {
+        if (analyzer != null) {
+            analyzer.dispose();
+            analyzer = null;
+        }
+        if (on) {
+            analyzer = new ClearanceAnalyzer(designPanel.getModel());
+            analyzer.addListener(this);
+            analyzer.addListener(designPanel);
+        }
+        designPanel.setClearanceOverlay(analyzer);
+        showSpots();
+    }
+
+    @Override
+    public void clearanceChanged(ClearanceAnalyzer analyzer, Rectangle dirtyPixels) {
+        showSpots();
+    }
+
+    private void showSpots() {
+        java.util.List<ClearanceSpot> spots = analyzer == null ? Collections.emptyList() : analyzer.getSpots();
+        boolean same = spots.size() == spotModel.size();
+        for (int i = 0; same && i < spots.size(); i++) {
+            same = spots.get(i).toString().equals(spotModel.get(i).toString());
+        }
+        if (!same) {
+            spotModel.clear();
+            spots.forEach(spotModel::addElement);
+        }
+        summaryLabel.setText(analyzer == null ? " "
+                : spots.isEmpty() ? "All walkways are wide enough" : spots.size() + " narrow spots");
+    }
+}
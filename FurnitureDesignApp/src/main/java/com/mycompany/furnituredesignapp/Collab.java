@@ -0,0 +1,825 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One furniture edit as exchanged between collaborators. ADD carries the
+ * furniture type and full geometry, UPDATE the full geometry after a move,
+ * rotation or resize, REMOVE only the id. Every edit is stamped with the
+ * author's Lamport clock and client id; for each item the edit with the
+ * highest (lamport, client) wins, and a removal wins over everything, so all
+ * replicas converge whatever order edits arrive in. The server answers an ADD
+ * whose id is already taken with a REJECT; the author shares the item again
+ * under a new id and echoes the REJECT, after which the server sends it the
+ * item that holds the id.
+ *
+ * <p>Ops are sent in frames of several ops, with ids and coordinates written
+ * as variable-length integers; a move is typically under twenty bytes.
+ */
+class CollabOp {
+    static final byte ADD = 1;
+    static final byte UPDATE = 2;
+    static final byte REMOVE = 3;
+    static final byte VIEWPORT = 4;
+    static final byte HELLO = 5;
+    static final byte REJECT = 6;
+
+    byte kind;
+    long id;
+    long lamport;
+    int client;
+    String type;
+    int x, y, width, height, rotation;
+
+    CollabOp(byte kind, long id, long lamport, int client) {
+        this.kind = kind;
+        this.id = id;
+        this.lamport = lamport;
+        this.client = client;
+    }
+
+    static CollabOp of(byte kind, FurnitureItem item, long lamport, int client) {
+        CollabOp op = new CollabOp(kind, item.getId(), lamport, client);
+        op.type = item.getType();
+        op.x = item.getX();
+        op.y = item.getY();
+        op.width = item.getWidth();
+        op.height = item.getHeight();
+        op.rotation = item.getRotation();
+        return op;
+    }
+
+    CollabOp copy() {
+        CollabOp op = new CollabOp(kind, id, lamport, client);
+        op.type = type;
+        op.x = x;
+        op.y = y;
+        op.width = width;
+        op.height = height;
+        op.rotation = rotation;
+        return op;
+    }
+
+    static CollabOp viewport(Rectangle view) {
+        CollabOp op = new CollabOp(VIEWPORT, 0, 0, 0);
+        op.x = view.x;
+        op.y = view.y;
+        op.width = view.width;
+        op.height = view.height;
+        return op;
+    }
+
+    boolean newerThan(long otherLamport, int otherClient) {
+        return lamport > otherLamport || (lamport == otherLamport && client > otherClient);
+    }
+
+    /** Bounds of the item in design pixels, grown to cover any rotation. */
+    boolean touches(Rectangle view) {
+        int reach = Math.max(width, height);
+        int cx = x + width / 2, cy = y + height / 2;
+        return view.intersects(cx - reach, cy - reach, 2 * reach, 2 * reach);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeByte(kind);
+        switch (kind) {
+            case ADD:
+                writeVarLong(out, id);
+                writeVarLong(out, lamport);
+                writeVarLong(out, client);
+                out.writeUTF(type);
+                writeGeometry(out);
+                break;
+            case UPDATE:
+                writeVarLong(out, id);
+                writeVarLong(out, lamport);
+                writeVarLong(out, client);
+                writeGeometry(out);
+                break;
+            case REMOVE:
+                writeVarLong(out, id);
+                writeVarLong(out, lamport);
+                writeVarLong(out, client);
+                break;
+            case VIEWPORT:
+                writeVarLong(out, zigZag(x));
+                writeVarLong(out, zigZag(y));
+                writeVarLong(out, width);
+                writeVarLong(out, height);
+                break;
+            case HELLO:
+                writeVarLong(out, client);
+                break;
+            case REJECT:
+                writeVarLong(out, id);
+                break;
+            default:
+                throw new IOException("Unknown op kind " + kind);
+        }
+    }
+
+    static CollabOp read(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        CollabOp op;
+        switch (kind) {
+            case ADD:
+                op = new CollabOp(kind, readVarLong(in), readVarLong(in), (int) readVarLong(in));
+                op.type = in.readUTF();
+                op.readGeometry(in);
+                return op;
+            case UPDATE:
+                op = new CollabOp(kind, readVarLong(in), readVarLong(in), (int) readVarLong(in));
+                op.readGeometry(in);
+                return op;
+            case REMOVE:
+                return new CollabOp(kind, readVarLong(in), readVarLong(in), (int) readVarLong(in));
+            case VIEWPORT:
+                op = new CollabOp(kind, 0, 0, 0);
+                op.x = unZigZag(readVarLong(in));
+                op.y = unZigZag(readVarLong(in));
+                op.width = (int) readVarLong(in);
+                op.height = (int) readVarLong(in);
+                return op;
+            case HELLO:
+                return new CollabOp(kind, 0, 0, (int) readVarLong(in));
+            case REJECT:
+                return new CollabOp(kind, readVarLong(in), 0, 0);
+            default:
+                throw new IOException("Unknown op kind " + kind);
+        }
+    }
+
+    private void writeGeometry(DataOutputStream out) throws IOException {
+        writeVarLong(out, zigZag(x));
+        writeVarLong(out, zigZag(y));
+        writeVarLong(out, width);
+        writeVarLong(out, height);
+        out.writeByte(rotation / 90);
+    }
+
+    private void readGeometry(DataInputStream in) throws IOException {
+        x = unZigZag(readVarLong(in));
+        y = unZigZag(readVarLong(in));
+        width = (int) readVarLong(in);
+        height = (int) readVarLong(in);
+        rotation = in.readByte() * 90;
+    }
+
+    /** Writes a frame: its byte length followed by the ops. */
+    static byte[] frame(java.util.List<CollabOp> ops) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(ops.size() * 16);
+        DataOutputStream out = new DataOutputStream(body);
+        for (CollabOp op : ops) {
+            op.write(out);
+        }
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(body.size() + 3);
+        DataOutputStream header = new DataOutputStream(framed);
+        writeVarLong(header, body.size());
+        body.writeTo(framed);
+        return framed.toByteArray();
+    }
+
+    /** Reads one frame, or returns null at end of stream. */
+    static java.util.List<CollabOp> readFrame(DataInputStream in) throws IOException {
+        long length;
+        try {
+            length = readVarLong(in);
+        } catch (EOFException ex) {
+            return null;
+        }
+        if (length > 16 * 1024 * 1024) {
+            throw new IOException("Frame too large: " + length);
+        }
+        byte[] body = new byte[(int) length];
+        in.readFully(body);
+        DataInputStream ops = new DataInputStream(new ByteArrayInputStream(body));
+        ArrayList<CollabOp> result = new ArrayList<>();
+        while (ops.available() > 0) {
+            result.add(read(ops));
+        }
+        return result;
+    }
+
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    // Small negative numbers become small unsigned ones: 0, -1, 1, -2 ... map to 0, 1, 2, 3 ...
+    static long zigZag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    static int unZigZag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
+
+/**
+ * Relay for a collaborative session. It keeps the winning state of every item
+ * so it can drop stale edits and send a newly scrolled-to area to a client,
+ * and forwards each edit only to the clients whose viewport contains the
+ * item before or after the edit; a client that has not seen the item yet is
+ * sent all of it. A removal goes to every client holding a copy, wherever
+ * the item is. Every connection has its own writer thread that sends
+ * whatever has queued up as one frame, so bursts are batched.
+ */
+class CollabServer {
+    private final ServerSocket serverSocket;
+    private final boolean interestManagement;
+    private final ArrayList<Connection> connections = new ArrayList<>();
+    private final HashMap<Long, CollabOp> items = new HashMap<>();
+    private final HashSet<Long> removed = new HashSet<>();
+    private int nextClient = 1;
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    /** Listens on the given address, or on all interfaces if it is null; port 0 picks a free port. */
+    CollabServer(InetAddress address, int port, boolean interestManagement) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, address);
+        this.interestManagement = interestManagement;
+        Thread acceptor = new Thread(this::acceptLoop, "collab-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    /** Copies of the winning state of every live item, as ADD ops. */
+    public synchronized Map<Long, CollabOp> getItems() {
+        HashMap<Long, CollabOp> copy = new HashMap<>();
+        for (CollabOp op : items.values()) {
+            copy.put(op.id, op.copy());
+        }
+        return copy;
+    }
+
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ex) {
+            // Already closed.
+        }
+        synchronized (this) {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            connections.clear();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Connection connection;
+                synchronized (this) {
+                    connection = new Connection(socket, nextClient++);
+                    connections.add(connection);
+                }
+                connection.start();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Collaboration accept failed: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized void handle(Connection from, java.util.List<CollabOp> ops) {
+        for (CollabOp op : ops) {
+            if (op.kind != CollabOp.VIEWPORT && op.kind != CollabOp.REJECT && from.rejected.contains(op.id)) {
+                // Still about the sender's own item that clashed, sent before it saw the REJECT.
+                continue;
+            }
+            switch (op.kind) {
+                case CollabOp.VIEWPORT:
+                    from.viewport = new Rectangle(op.x, op.y, op.width, op.height);
+                    for (CollabOp item : items.values()) {
+                        if (item.touches(from.viewport)) {
+                            from.send(item.copy());
+                        }
+                    }
+                    break;
+                case CollabOp.ADD:
+                    if (removed.contains(op.id) || items.containsKey(op.id)) {
+                        from.rejected.add(op.id);
+                        from.send(new CollabOp(CollabOp.REJECT, op.id, 0, 0));
+                    } else {
+                        items.put(op.id, op.copy());
+                        from.known.add(op.id);
+                        forward(from, op, null, null);
+                    }
+                    break;
+                case CollabOp.UPDATE: {
+                    CollabOp state = items.get(op.id);
+                    if (state != null && op.newerThan(state.lamport, state.client)) {
+                        CollabOp previous = state.copy();
+                        state.x = op.x;
+                        state.y = op.y;
+                        state.width = op.width;
+                        state.height = op.height;
+                        state.rotation = op.rotation;
+                        state.lamport = op.lamport;
+                        state.client = op.client;
+                        forward(from, op, previous, state);
+                    }
+                    break;
+                }
+                case CollabOp.REMOVE: {
+                    CollabOp state = items.remove(op.id);
+                    from.known.remove(op.id);
+                    if (removed.add(op.id)) {
+                        forward(from, op, state, null);
+                    }
+                    break;
+                }
+                case CollabOp.REJECT: {
+                    from.rejected.remove(op.id);
+                    CollabOp state = items.get(op.id);
+                    Rectangle view = from.viewport;
+                    if (state != null && (!interestManagement || view == null || state.touches(view))) {
+                        from.send(state.copy());
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void forward(Connection from, CollabOp op, CollabOp previous, CollabOp current) {
+        for (Connection connection : connections) {
+            if (connection == from || connection.rejected.contains(op.id)) {
+                // A client with a rejected ADD for this id gets the item once it has echoed the REJECT.
+                continue;
+            }
+            Rectangle view = connection.viewport;
+            if (op.kind == CollabOp.REMOVE) {
+                if (connection.known.contains(op.id)) {
+                    connection.send(op);
+                }
+            } else if (!connection.known.contains(op.id)) {
+                if (view == null || op.touches(view)) {
+                    // New to this client, e.g. entering its area: send the whole item.
+                    connection.send(current != null ? current.copy() : op);
+                } else if (!interestManagement) {
+                    connection.send(op);
+                }
+            } else if (!interestManagement || view == null || previous.touches(view) || op.touches(view)) {
+                // Includes the update that takes the item out of this client's view.
+                connection.send(op);
+            }
+        }
+    }
+
+    private synchronized void disconnected(Connection connection) {
+        connections.remove(connection);
+    }
+
+    private class Connection {
+        private final Socket socket;
+        private final int client;
+        private final LinkedBlockingQueue<CollabOp> outbox = new LinkedBlockingQueue<>();
+        volatile Rectangle viewport;
+        // Ids of the items this client holds a copy of, and of its rejected ADDs it has not
+        // echoed yet; both guarded by the server.
+        final HashSet<Long> known = new HashSet<>();
+        final HashSet<Long> rejected = new HashSet<>();
+
+        Connection(Socket socket, int client) {
+            this.socket = socket;
+            this.client = client;
+            // Queued before the connection is listed, so the greeting goes out ahead of any edit.
+            outbox.add(new CollabOp(CollabOp.HELLO, 0, 0, client));
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, "collab-server-read-" + client);
+            Thread writer = new Thread(this::writeLoop, "collab-server-write-" + client);
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        void send(CollabOp op) {
+            // Only an ADD gives the client an item it lacks; it ignores updates for unknown ids.
+            if (op.kind == CollabOp.ADD) {
+                known.add(op.id);
+            } else if (op.kind == CollabOp.REMOVE) {
+                known.remove(op.id);
+            }
+            outbox.add(op);
+        }
+
+        private void readLoop() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                CountingInput counter = new CountingInput(in);
+                java.util.List<CollabOp> ops;
+                while ((ops = CollabOp.readFrame(counter.data)) != null) {
+                    bytesIn.addAndGet(counter.take());
+                    handle(this, ops);
+                }
+            } catch (IOException ex) {
+                // Client went away.
+            } finally {
+                close();
+                disconnected(this);
+            }
+        }
+
+        private void writeLoop() {
+            ArrayList<CollabOp> batch = new ArrayList<>();
+            try {
+                OutputStream out = socket.getOutputStream();
+                while (!socket.isClosed()) {
+                    batch.add(outbox.take());
+                    outbox.drainTo(batch);
+                    byte[] frame = CollabOp.frame(batch);
+                    out.write(frame);
+                    out.flush();
+                    bytesOut.addAndGet(frame.length);
+                    batch.clear();
+                }
+            } catch (IOException | InterruptedException ex) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // Already closed.
+            }
+        }
+    }
+}
+
+/** Counts the bytes read through a stream, for bandwidth statistics. */
+class CountingInput extends FilterInputStream {
+    final DataInputStream data = new DataInputStream(this);
+    private long count;
+
+    CountingInput(InputStream in) {
+        super(in);
+    }
+
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    long take() {
+        long n = count;
+        count = 0;
+        return n;
+    }
+}
+
+interface CollabListener {
+    void localOpQueued(CollabOp op);
+
+    void remoteOpApplied(CollabOp op);
+}
+
+/**
+ * Keeps a {@link DesignModel} in sync with a {@link CollabServer}. Local
+ * edits are turned into ops and sent every {@link #FLUSH_MILLIS} ms as one
+ * frame; repeated moves of the same item within that window collapse into
+ * one update. Remote ops are applied through the given executor, which must
+ * be the thread that edits the model (the EDT in the application), and the
+ * same Lamport/last-writer-wins rule as on the server decides which edit of
+ * an item stands.
+ */
+class CollabClient implements DesignModelListener {
+    static final int FLUSH_MILLIS = 10;
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "collab-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DesignModel model;
+    private final Executor applier;
+    private final HashMap<Long, long[]> stamps = new HashMap<>();
+    private final HashSet<Long> removed = new HashSet<>();
+    private final LinkedHashMap<Long, CollabOp> pending = new LinkedHashMap<>();
+    private CollabOp pendingViewport;
+    private final ArrayList<CollabListener> listeners = new ArrayList<>();
+    private Socket socket;
+    private OutputStream out;
+    private ScheduledFuture<?> flushTask;
+    private int client;
+    private long clock;
+    private boolean applyingRemote;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    CollabClient(DesignModel model, Executor applier) {
+        this.model = model;
+        this.applier = applier;
+    }
+
+    /**
+     * Connects and waits for the server's greeting. Call on the applier
+     * thread; items already in the model get ids from this client's range
+     * and are published to the session.
+     */
+    public void connect(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        CountingInput counter = new CountingInput(new BufferedInputStream(socket.getInputStream()));
+        java.util.List<CollabOp> hello = CollabOp.readFrame(counter.data);
+        if (hello == null || hello.isEmpty() || hello.get(0).kind != CollabOp.HELLO) {
+            socket.close();
+            throw new IOException("Not a collaboration server");
+        }
+        bytesReceived.addAndGet(counter.take());
+        client = hello.get(0).client;
+        model.setIdBase((long) client << 32);
+        model.renumber();
+
+        model.addListener(this);
+        for (FurnitureItem item : model.getItems()) {
+            publishLocal(CollabOp.ADD, item);
+        }
+        // Edits the server queued right after its greeting arrive in the same frame.
+        applyRemote(hello.subList(1, hello.size()));
+        Thread reader = new Thread(() -> readLoop(counter), "collab-client-read-" + client);
+        reader.setDaemon(true);
+        reader.start();
+        flushTask = flusher.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public int getClientId() {
+        return client;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public void addListener(CollabListener listener) {
+        listeners.add(listener);
+    }
+
+    /** Limits the updates this client receives to items near the given area. */
+    public void setViewport(Rectangle view) {
+        synchronized (pending) {
+            pendingViewport = CollabOp.viewport(view);
+        }
+    }
+
+    public void close() {
+        model.removeListener(this);
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ex) {
+            // Already closed.
+        }
+    }
+
+    @Override
+    public void designChanged(DesignChange change) {
+        if (applyingRemote) {
+            return;
+        }
+        switch (change.kind) {
+            case ITEM_ADDED:
+                publishLocal(CollabOp.ADD, change.item);
+                break;
+            case ITEM_MOVED:
+            case ITEM_TRANSFORMED:
+                publishLocal(CollabOp.UPDATE, change.item);
+                break;
+            case ITEM_REMOVED:
+                publishLocal(CollabOp.REMOVE, change.item);
+                break;
+            case RESET: {
+                // Loading or clearing a design: publish what appeared and disappeared.
+                HashSet<Long> present = new HashSet<>();
+                for (FurnitureItem item : model.getItems()) {
+                    present.add(item.getId());
+                    if (!stamps.containsKey(item.getId())) {
+                        publishLocal(CollabOp.ADD, item);
+                    }
+                }
+                for (Long id : new ArrayList<>(stamps.keySet())) {
+                    if (!present.contains(id)) {
+                        CollabOp op = new CollabOp(CollabOp.REMOVE, id, ++clock, client);
+                        stamps.remove(id);
+                        removed.add(id);
+                        queue(op);
+                    }
+                }
+                break;
+            }
+            default:
+                // Room settings are not shared.
+                break;
+        }
+    }
+
+    private void publishLocal(byte kind, FurnitureItem item) {
+        CollabOp op = CollabOp.of(kind, item, ++clock, client);
+        if (kind == CollabOp.REMOVE) {
+            stamps.remove(item.getId());
+            removed.add(item.getId());
+        } else {
+            stamps.put(item.getId(), new long[]{op.lamport, client});
+        }
+        for (CollabListener listener : listeners) {
+            listener.localOpQueued(op);
+        }
+        queue(op);
+    }
+
+    private void queue(CollabOp op) {
+        synchronized (pending) {
+            CollabOp earlier = pending.remove(op.id);
+            if (earlier != null && earlier.kind == CollabOp.ADD) {
+                if (op.kind == CollabOp.REMOVE) {
+                    return;
+                }
+                op.kind = CollabOp.ADD;
+            }
+            pending.put(op.id, op);
+        }
+    }
+
+    /** Sends everything queued since the last flush as one frame. */
+    public void flush() {
+        ArrayList<CollabOp> batch;
+        synchronized (pending) {
+            if (pending.isEmpty() && pendingViewport == null) {
+                return;
+            }
+            batch = new ArrayList<>(pending.size() + 1);
+            if (pendingViewport != null) {
+                batch.add(pendingViewport);
+                pendingViewport = null;
+            }
+            batch.addAll(pending.values());
+            pending.clear();
+        }
+        try {
+            byte[] frame = CollabOp.frame(batch);
+            synchronized (this) {
+                out.write(frame);
+                out.flush();
+            }
+            bytesSent.addAndGet(frame.length);
+        } catch (IOException ex) {
+            System.err.println("Collaboration connection lost: " + ex.getMessage());
+            if (flushTask != null) {
+                flushTask.cancel(false);
+            }
+        }
+    }
+
+    private void readLoop(CountingInput counter) {
+        try {
+            java.util.List<CollabOp> ops;
+            while ((ops = CollabOp.readFrame(counter.data)) != null) {
+                bytesReceived.addAndGet(counter.take());
+                java.util.List<CollabOp> batch = ops;
+                applier.execute(() -> applyRemote(batch));
+            }
+        } catch (IOException ex) {
+            if (!socket.isClosed()) {
+                System.err.println("Collaboration connection lost: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void applyRemote(java.util.List<CollabOp> ops) {
+        applyingRemote = true;
+        try {
+            for (CollabOp op : ops) {
+                clock = Math.max(clock, op.lamport);
+                if (apply(op)) {
+                    for (CollabListener listener : listeners) {
+                        listener.remoteOpApplied(op);
+                    }
+                }
+            }
+        } finally {
+            applyingRemote = false;
+        }
+    }
+
+    private boolean apply(CollabOp op) {
+        if (removed.contains(op.id)) {
+            return false;
+        }
+        FurnitureItem item = model.findById(op.id);
+        long[] stamp = stamps.get(op.id);
+        switch (op.kind) {
+            case CollabOp.REMOVE:
+                removed.add(op.id);
+                stamps.remove(op.id);
+                if (item != null) {
+                    model.remove(item);
+                }
+                return true;
+            case CollabOp.ADD:
+                if (item == null) {
+                    item = new FurnitureItem(op.type, op.x, op.y, op.width, op.height);
+                    item.setGeometry(op.x, op.y, op.width, op.height, op.rotation);
+                    item.setId(op.id);
+                    stamps.put(op.id, new long[]{op.lamport, op.client});
+                    model.add(item);
+                    return true;
+                }
+                // Already known, e.g. sent again after a viewport change.
+                return update(item, stamp, op);
+            case CollabOp.UPDATE:
+                // The server sends a whole item to a client that lacks it, so
+                // an update finds nothing only if this client just removed it.
+                return item != null && update(item, stamp, op);
+            case CollabOp.REJECT:
+                // Someone else's item has this id: share ours again under a new one,
+                // and echo the REJECT so the server sends us theirs.
+                stamps.remove(op.id);
+                synchronized (pending) {
+                    pending.remove(op.id);
+                }
+                queue(op);
+                if (item != null) {
+                    model.remove(item);
+                    item.setId(0);
+                    model.add(item);
+                    publishLocal(CollabOp.ADD, item);
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean update(FurnitureItem item, long[] stamp, CollabOp op) {
+        if (stamp != null && !op.newerThan(stamp[0], (int) stamp[1])) {
+            return false;
+        }
+        stamps.put(op.id, new long[]{op.lamport, op.client});
+        model.setGeometry(item, op.x, op.y, op.width, op.height, op.rotation);
+        return true;
+    }
+}
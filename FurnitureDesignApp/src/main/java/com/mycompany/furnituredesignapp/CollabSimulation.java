@@ -0,0 +1,262 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.net.InetAddress;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a {@link CollabServer} on localhost with many simulated designers and
+ * reports end-to-end edit latency (from the local edit to the moment another
+ * client has applied it), bandwidth, and whether every client converged on
+ * the server's state for its viewport. Designers work in groups of four on
+ * the same room, and rooms are laid out side by side, so with interest
+ * management each client only hears about its own room. Every designer
+ * opens a few items of their own before joining, and with {@code --roam}
+ * some edits carry an item into the next room, where its designers may
+ * delete it; a client still holding a deleted item counts as a mismatch.
+ *
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.CollabSimulation \
+ *     [clients] [seconds] [editsPerSecond] [--broadcast] [--roam]
+ * </pre>
+ */
+class CollabSimulation {
+    private static final String[] TYPES = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+    private static final int ROOM_WIDTH = 1000;
+    private static final int ROOM_HEIGHT = 700;
+    private static final int CLIENTS_PER_ROOM = 4;
+    private static final int ITEMS_PER_CLIENT = 25;
+    private static final int ITEMS_BEFORE_JOINING = 5;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        java.util.List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean broadcast = options.remove("--broadcast");
+        boolean roam = options.remove("--roam");
+        int clientCount = options.size() > 0 ? Integer.parseInt(options.get(0)) : 40;
+        int seconds = options.size() > 1 ? Integer.parseInt(options.get(1)) : 10;
+        int editsPerSecond = options.size() > 2 ? Integer.parseInt(options.get(2)) : 20;
+
+        CollabServer server = new CollabServer(InetAddress.getLoopbackAddress(), 0, !broadcast);
+        ConcurrentHashMap<Long, Long> sentAt = new ConcurrentHashMap<>();
+        ArrayList<Long> latencies = new ArrayList<>();
+        boolean[] measuring = {false};
+
+        ArrayList<Designer> designers = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            int room = i / CLIENTS_PER_ROOM;
+            Rectangle view = new Rectangle((room % 5) * ROOM_WIDTH, (room / 5) * ROOM_HEIGHT, ROOM_WIDTH, ROOM_HEIGHT);
+            Designer designer = new Designer(view, i, roam);
+            designer.client.addListener(new CollabListener() {
+                public void localOpQueued(CollabOp op) {
+                    sentAt.put(key(op), System.nanoTime());
+                }
+
+                public void remoteOpApplied(CollabOp op) {
+                    Long start = sentAt.get(key(op));
+                    if (start != null) {
+                        long latency = System.nanoTime() - start;
+                        synchronized (latencies) {
+                            if (measuring[0]) {
+                                latencies.add(latency);
+                            }
+                        }
+                    }
+                }
+            });
+            designer.run(() -> {
+                designer.seed(ITEMS_BEFORE_JOINING);
+                designer.client.connect("localhost", server.getPort());
+                designer.client.setViewport(view);
+                return null;
+            });
+            designers.add(designer);
+        }
+        for (Designer designer : designers) {
+            designer.run(() -> {
+                designer.seed(ITEMS_PER_CLIENT - ITEMS_BEFORE_JOINING);
+                return null;
+            });
+        }
+        awaitSeeded(server, designers, clientCount * ITEMS_PER_CLIENT);
+
+        long bytesSentBefore = 0, bytesReceivedBefore = 0;
+        for (Designer designer : designers) {
+            bytesSentBefore += designer.client.getBytesSent();
+            bytesReceivedBefore += designer.client.getBytesReceived();
+        }
+        synchronized (latencies) {
+            measuring[0] = true;
+        }
+        ScheduledExecutorService editors = Executors.newScheduledThreadPool(4);
+        long period = 1_000_000L / editsPerSecond;
+        for (Designer designer : designers) {
+            editors.scheduleAtFixedRate(() -> designer.applier.execute(designer::edit),
+                    designer.random.nextInt((int) period), period, TimeUnit.MICROSECONDS);
+        }
+        Thread.sleep(seconds * 1000L);
+        editors.shutdownNow();
+        Thread.sleep(1000);
+        synchronized (latencies) {
+            measuring[0] = false;
+        }
+
+        long bytesSent = -bytesSentBefore, bytesReceived = -bytesReceivedBefore, edits = 0;
+        for (Designer designer : designers) {
+            bytesSent += designer.client.getBytesSent();
+            bytesReceived += designer.client.getBytesReceived();
+            edits += designer.edits;
+        }
+
+        Map<Long, CollabOp> state = server.getItems();
+        int mismatches = 0;
+        for (Designer designer : designers) {
+            mismatches += designer.run(() -> designer.countMismatches(state));
+        }
+
+        long[] samples;
+        synchronized (latencies) {
+            samples = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+        System.out.printf("%d clients, %d rooms, %s%s, %d s at %d edits/s per client%n", clientCount,
+                (clientCount + CLIENTS_PER_ROOM - 1) / CLIENTS_PER_ROOM,
+                broadcast ? "broadcast to all" : "interest management", roam ? ", roaming items" : "",
+                seconds, editsPerSecond);
+        System.out.printf("edits: %d local, %d remote applications%n", edits, samples.length);
+        if (samples.length > 0) {
+            System.out.printf("latency ms: p50 %.2f  p95 %.2f  p99 %.2f  max %.2f%n",
+                    percentile(samples, 0.50), percentile(samples, 0.95),
+                    percentile(samples, 0.99), samples[samples.length - 1] / 1e6);
+        }
+        double elapsed = seconds + 1;
+        System.out.printf("bandwidth per client: %.1f KB/s up, %.1f KB/s down (%.1f bytes per edit up)%n",
+                bytesSent / elapsed / clientCount / 1024, bytesReceived / elapsed / clientCount / 1024,
+                edits > 0 ? (double) bytesSent / edits : 0);
+        System.out.printf("server: %d items, %.1f KB in, %.1f KB out%n", state.size(),
+                server.getBytesIn() / 1024.0, server.getBytesOut() / 1024.0);
+        System.out.printf("viewport mismatches after settling: %d%n", mismatches);
+
+        for (Designer designer : designers) {
+            designer.run(() -> {
+                designer.client.close();
+                return null;
+            });
+            designer.applier.shutdown();
+        }
+        server.close();
+    }
+
+    // Seeding sends every item to every client with --broadcast; start measuring once the server
+    // has sent it all and every designer has applied what it received.
+    private static void awaitSeeded(CollabServer server, java.util.List<Designer> designers, int items)
+            throws Exception {
+        long before;
+        do {
+            before = server.getBytesOut();
+            Thread.sleep(250);
+        } while (server.getItems().size() < items || server.getBytesOut() != before);
+        for (Designer designer : designers) {
+            designer.run(() -> null);
+        }
+    }
+
+    private static long key(CollabOp op) {
+        return ((long) op.client << 40) | op.lamport;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    /** One simulated designer: a model and client confined to a single thread. */
+    private static class Designer {
+        final DesignModel model = new DesignModel();
+        final ExecutorService applier;
+        final CollabClient client;
+        final Rectangle view;
+        final Random random;
+        final boolean roam;
+        long edits;
+
+        Designer(Rectangle view, int index, boolean roam) {
+            this.view = view;
+            this.roam = roam;
+            this.random = new Random(index);
+            this.applier = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "designer-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.client = new CollabClient(model, applier);
+        }
+
+        <T> T run(Callable<T> task) throws Exception {
+            return applier.submit(task).get();
+        }
+
+        void seed(int count) {
+            for (int i = 0; i < count; i++) {
+                model.add(randomItem());
+            }
+        }
+
+        private FurnitureItem randomItem() {
+            return new FurnitureItem(TYPES[random.nextInt(TYPES.length)],
+                    view.x + random.nextInt(view.width - 100), view.y + random.nextInt(view.height - 100), 80, 60);
+        }
+
+        // Mostly drags, with the occasional rotate, resize and replace. Items
+        // belong to the whole room, so designers sometimes edit the same piece.
+        // When roaming, some drags carry the item into the room on the left or right.
+        void edit() {
+            java.util.List<FurnitureItem> items = model.getItems();
+            if (items.isEmpty()) {
+                model.add(randomItem());
+                return;
+            }
+            FurnitureItem item = items.get(random.nextInt(items.size()));
+            int action = random.nextInt(100);
+            if (roam && action < 5) {
+                int x = item.getX() + (random.nextBoolean() ? ROOM_WIDTH : -ROOM_WIDTH);
+                model.setPosition(item, x < 0 ? x + 2 * ROOM_WIDTH : x, item.getY());
+            } else if (action < 80) {
+                int dx = random.nextInt(21) - 10, dy = random.nextInt(21) - 10;
+                if (view.contains(item.getX() + dx, item.getY() + dy)) {
+                    model.move(item, dx, dy);
+                }
+            } else if (action < 90) {
+                model.rotate(item, 90);
+            } else if (action < 95) {
+                model.resize(item, random.nextBoolean() ? 1.1 : 0.9);
+            } else {
+                model.remove(item);
+                model.add(randomItem());
+            }
+            edits++;
+        }
+
+        int countMismatches(Map<Long, CollabOp> state) {
+            int mismatches = 0;
+            HashSet<Long> expected = new HashSet<>();
+            for (CollabOp op : state.values()) {
+                if (!op.touches(view)) {
+                    continue;
+                }
+                expected.add(op.id);
+                FurnitureItem item = model.findById(op.id);
+                if (item == null || item.getX() != op.x || item.getY() != op.y || item.getWidth() != op.width
+                        || item.getHeight() != op.height || item.getRotation() != op.rotation) {
+                    mismatches++;
+                }
+            }
+            // Items out of view may be out of date, but none may outlive its removal.
+            for (FurnitureItem item : model.getItems()) {
+                if (!expected.contains(item.getId()) && !state.containsKey(item.getId())) {
+                    mismatches++;
+                }
+            }
+            return mismatches;
+        }
+    }
+}
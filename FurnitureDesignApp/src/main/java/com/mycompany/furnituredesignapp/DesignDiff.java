@@ -0,0 +1,239 @@
+package com.mycompany.furnituredesignapp;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Structural difference between two versions of a design. Furniture is
+ * matched by id through an open-addressing table of primitive longs, so two
+ * designs are compared in one pass over each without boxing. Items saved
+ * before ids existed (id 0) are matched by type and exact geometry instead,
+ * which reports them as unchanged or as removed and added.
+ *
+ * <p>Can also be run from the command line:
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.DesignDiff before.design after.design
+ * </pre>
+ */
+class DesignDiff {
+    static final int ADDED = 1;
+    static final int REMOVED = 2;
+    static final int MOVED = 4;
+    static final int ROTATED = 8;
+    static final int RESIZED = 16;
+
+    /** A changed item; before is null for additions and after is null for removals. */
+    static class Entry {
+        final int changes;
+        final FurnitureItem before;
+        final FurnitureItem after;
+
+        Entry(int changes, FurnitureItem before, FurnitureItem after) {
+            this.changes = changes;
+            this.before = before;
+            this.after = after;
+        }
+
+        boolean has(int change) {
+            return (changes & change) != 0;
+        }
+    }
+
+    private final ArrayList<Entry> entries = new ArrayList<>();
+    private final int[] counts = new int[5];
+    private boolean roomChanged;
+    private int unchanged;
+
+    public static DesignDiff compare(DesignData before, DesignData after) {
+        DesignDiff diff = new DesignDiff();
+        diff.roomChanged = before.roomWidth != after.roomWidth || before.roomHeight != after.roomHeight
+                || !Objects.equals(before.roomShape, after.roomShape) || !Objects.equals(before.roomColor, after.roomColor);
+
+        java.util.List<FurnitureItem> oldItems = before.furnitureItems;
+        java.util.List<FurnitureItem> newItems = after.furnitureItems;
+        IdTable index = new IdTable(oldItems.size());
+        ArrayList<FurnitureItem> oldUnkeyed = new ArrayList<>();
+        for (int i = 0; i < oldItems.size(); i++) {
+            FurnitureItem item = oldItems.get(i);
+            if (item.getId() == 0 || !index.put(item.getId(), i)) {
+                oldUnkeyed.add(item);
+            }
+        }
+
+        boolean[] matched = new boolean[oldItems.size()];
+        ArrayList<FurnitureItem> newUnkeyed = new ArrayList<>();
+        for (FurnitureItem item : newItems) {
+            int i = item.getId() == 0 ? -1 : index.get(item.getId());
+            if (i < 0 || matched[i]) {
+                newUnkeyed.add(item);
+                continue;
+            }
+            matched[i] = true;
+            diff.compareItem(oldItems.get(i), item);
+        }
+        for (int i = 0; i < oldItems.size(); i++) {
+            FurnitureItem item = oldItems.get(i);
+            if (!matched[i] && item.getId() != 0 && index.get(item.getId()) == i) {
+                diff.add(REMOVED, item, null);
+            }
+        }
+        diff.matchByContent(oldUnkeyed, newUnkeyed);
+        return diff;
+    }
+
+    // Items without usable ids: equal type and geometry count as the same item.
+    private void matchByContent(java.util.List<FurnitureItem> oldItems, java.util.List<FurnitureItem> newItems) {
+        HashMap<String, ArrayDeque<FurnitureItem>> buckets = new HashMap<>();
+        for (FurnitureItem item : oldItems) {
+            buckets.computeIfAbsent(contentKey(item), k -> new ArrayDeque<>()).add(item);
+        }
+        for (FurnitureItem item : newItems) {
+            ArrayDeque<FurnitureItem> bucket = buckets.get(contentKey(item));
+            if (bucket != null && !bucket.isEmpty()) {
+                bucket.poll();
+                unchanged++;
+            } else {
+                add(ADDED, null, item);
+            }
+        }
+        for (ArrayDeque<FurnitureItem> bucket : buckets.values()) {
+            for (FurnitureItem item : bucket) {
+                add(REMOVED, item, null);
+            }
+        }
+    }
+
+    private static String contentKey(FurnitureItem item) {
+        return item.getType() + ':' + item.getX() + ':' + item.getY() + ':' + item.getWidth() + ':'
+                + item.getHeight() + ':' + Math.floorMod(item.getRotation(), 360);
+    }
+
+    private void compareItem(FurnitureItem before, FurnitureItem after) {
+        int changes = 0;
+        int oldRotation = Math.floorMod(before.getRotation(), 360);
+        int newRotation = Math.floorMod(after.getRotation(), 360);
+        if (oldRotation != newRotation) {
+            changes |= ROTATED;
+        }
+        // Width and height are swapped by quarter turns; compare the unrotated footprint.
+        boolean oldSwapped = oldRotation % 180 != 0, newSwapped = newRotation % 180 != 0;
+        int oldWidth = oldSwapped ? before.getHeight() : before.getWidth();
+        int oldHeight = oldSwapped ? before.getWidth() : before.getHeight();
+        int newWidth = newSwapped ? after.getHeight() : after.getWidth();
+        int newHeight = newSwapped ? after.getWidth() : after.getHeight();
+        if (oldWidth != newWidth || oldHeight != newHeight) {
+            changes |= RESIZED;
+        }
+        // Rotating keeps the top-left corner, so any change of the corner is a
+        // move. Resizing keeps the centre and moves the corner, so then only a
+        // change of the centre beyond rounding (compared doubled) counts.
+        boolean cornerMoved = after.getX() != before.getX() || after.getY() != before.getY();
+        int dx = (after.getX() * 2 + after.getWidth()) - (before.getX() * 2 + before.getWidth());
+        int dy = (after.getY() * 2 + after.getHeight()) - (before.getY() * 2 + before.getHeight());
+        if (cornerMoved && ((changes & RESIZED) == 0 || Math.abs(dx) > 2 || Math.abs(dy) > 2)) {
+            changes |= MOVED;
+        }
+        if (changes == 0) {
+            unchanged++;
+        } else {
+            add(changes, before, after);
+        }
+    }
+
+    private void add(int changes, FurnitureItem before, FurnitureItem after) {
+        entries.add(new Entry(changes, before, after));
+        for (int bit = 0; bit < counts.length; bit++) {
+            if ((changes & (1 << bit)) != 0) {
+                counts[bit]++;
+            }
+        }
+    }
+
+    public java.util.List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /** Number of items with the given change; an item can be moved, rotated and resized at once. */
+    public int count(int change) {
+        return counts[Integer.numberOfTrailingZeros(change)];
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public boolean isRoomChanged() {
+        return roomChanged;
+    }
+
+    public String getSummary() {
+        return String.format("%d added, %d removed, %d moved, %d rotated, %d resized, %d unchanged%s",
+                count(ADDED), count(REMOVED), count(MOVED), count(ROTATED), count(RESIZED), unchanged,
+                roomChanged ? "; room changed" : "");
+    }
+
+    static DesignData read(File file) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (DesignData) ois.readObject();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("usage: DesignDiff before.design after.design");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        DesignData before = read(new File(args[0]));
+        DesignData after = read(new File(args[1]));
+        long loaded = System.nanoTime();
+        DesignDiff diff = compare(before, after);
+        long compared = System.nanoTime();
+        System.out.println(diff.getSummary());
+        System.out.printf("%d + %d items: loaded in %.1f ms, compared in %.1f ms%n",
+                before.furnitureItems.size(), after.furnitureItems.size(),
+                (loaded - start) / 1e6, (compared - loaded) / 1e6);
+    }
+
+    /** Maps item ids to list positions with linear probing over parallel arrays. */
+    private static class IdTable {
+        private final long[] keys;
+        private final int[] values;
+        private final int mask;
+
+        IdTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(4, expected * 2 - 1)) << 1;
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /** Returns false if the id is already present. Ids must not be 0. */
+        boolean put(long key, int value) {
+            int slot = hash(key);
+            while (keys[slot] != 0) {
+                if (keys[slot] == key) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            return true;
+        }
+
+        int get(long key) {
+            for (int slot = hash(key); keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return values[slot];
+                }
+            }
+            return -1;
+        }
+
+        private int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * The design being edited: room configuration plus furniture. Views subscribe
+ * with a {@link DesignModelListener} and receive one {@link DesignChange} per
+ * edit, so they can update just the affected item instead of rebuilding from a
+ * full copy of the design. Items get a stable id when they are added.
+ *
+ * <p>Alongside the live items, every edit records the item's new value in a
+ * persistent map, so {@link #snapshot()} returns an immutable copy of the
+ * whole design in O(1).
+ *
+ * <p>The model has a single writer. Once {@link #confineTo confined}, e.g. to
+ * the Swing event thread, every edit must be made on that thread and an edit
+ * from anywhere else throws; other threads hand edits over with
+ * {@link #submit}. Reading never locks: {@link #snapshot()} and the room
+ * getters may be called from any thread, while the live items returned by
+ * {@link #getItems()}, {@link #findById} and {@link #itemAt} belong to the
+ * writer thread. Listeners are called on the writer thread.
+ */
+class DesignModel {
+    private static final long ID_RANGE = 1L << 32;
+
+    private final ArrayList<FurnitureItem> furnitureItems = new ArrayList<>();
+    private final HashMap<Long, FurnitureItem> itemsById = new HashMap<>();
+    private final CopyOnWriteArrayList<DesignModelListener> listeners = new CopyOnWriteArrayList<>();
+    private Executor writer = Runnable::run;
+    private BooleanSupplier onWriterThread = () -> true;
+    private long idBase = 0;
+    private long nextId = 1;
+    private long nextOrder = 1;
+    private volatile DesignSnapshot snapshot = DesignSnapshot.EMPTY;
+
+    public void addListener(DesignModelListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DesignModelListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fire(DesignChange change) {
+        for (DesignModelListener listener : listeners) {
+            listener.designChanged(change);
+        }
+    }
+
+    /**
+     * Allows edits only on the writer thread: the one the executor runs tasks
+     * on and the check recognizes, e.g. {@code confineTo(SwingUtilities::invokeLater,
+     * SwingUtilities::isEventDispatchThread)}. Until then the model accepts
+     * edits from any thread and callers must not edit concurrently.
+     */
+    public void confineTo(Executor writer, BooleanSupplier onWriterThread) {
+        this.writer = writer;
+        this.onWriterThread = onWriterThread;
+    }
+
+    /**
+     * Runs an edit on the writer thread, so any thread can change the design.
+     * Completes with the snapshot taken right after the edit, or with the
+     * exception it threw.
+     */
+    public CompletableFuture<DesignSnapshot> submit(Consumer<DesignModel> edit) {
+        CompletableFuture<DesignSnapshot> result = new CompletableFuture<>();
+        writer.execute(() -> {
+            try {
+                edit.accept(this);
+                result.complete(snapshot);
+            } catch (RuntimeException | Error ex) {
+                result.completeExceptionally(ex);
+            }
+        });
+        return result;
+    }
+
+    private void checkWriter() {
+        if (!onWriterThread.getAsBoolean()) {
+            throw new IllegalStateException("Design edited on " + Thread.currentThread().getName()
+                    + " instead of its writer thread; use submit()");
+        }
+    }
+
+    public void add(FurnitureItem item) {
+        checkWriter();
+        if (item.getId() == 0 || itemsById.containsKey(item.getId())) {
+            item.setId(nextId++);
+        } else {
+            reserveId(item.getId());
+        }
+        furnitureItems.add(item);
+        itemsById.put(item.getId(), item);
+        record(item, nextOrder++);
+        fire(new DesignChange(DesignChange.Kind.ITEM_ADDED, item, null));
+    }
+
+    public void remove(FurnitureItem item) {
+        checkWriter();
+        if (furnitureItems.remove(item)) {
+            itemsById.remove(item.getId());
+            snapshot = snapshot.withItems(snapshot.getItemMap().without(item.getId()));
+            fire(new DesignChange(DesignChange.Kind.ITEM_REMOVED, item, item.getBounds()));
+        }
+    }
+
+    public void move(FurnitureItem item, int dx, int dy) {
+        checkWriter();
+        Rectangle before = item.getBounds();
+        item.move(dx, dy);
+        record(item);
+        fire(new DesignChange(DesignChange.Kind.ITEM_MOVED, item, before));
+    }
+
+    public void setPosition(FurnitureItem item, int x, int y) {
+        checkWriter();
+        if (item.getX() == x && item.getY() == y) {
+            return;
+        }
+        Rectangle before = item.getBounds();
+        item.setPosition(x, y);
+        record(item);
+        fire(new DesignChange(DesignChange.Kind.ITEM_MOVED, item, before));
+    }
+
+    public void rotate(FurnitureItem item, int degrees) {
+        checkWriter();
+        Rectangle before = item.getBounds();
+        item.rotate(degrees);
+        record(item);
+        fire(new DesignChange(DesignChange.Kind.ITEM_TRANSFORMED, item, before));
+    }
+
+    public void resize(FurnitureItem item, double scaleFactor) {
+        checkWriter();
+        Rectangle before = item.getBounds();
+        item.resize(scaleFactor);
+        record(item);
+        fire(new DesignChange(DesignChange.Kind.ITEM_TRANSFORMED, item, before));
+    }
+
+    /** Sets position, size and rotation at once, e.g. to apply an edit made elsewhere. */
+    public void setGeometry(FurnitureItem item, int x, int y, int width, int height, int rotation) {
+        checkWriter();
+        Rectangle before = item.getBounds();
+        item.setGeometry(x, y, width, height, rotation);
+        record(item);
+        fire(new DesignChange(DesignChange.Kind.ITEM_TRANSFORMED, item, before));
+    }
+
+    /**
+     * Makes ids assigned from now on come from the 2^32 ids after the given
+     * base, so several collaborating models never hand out the same id.
+     */
+    public void setIdBase(long base) {
+        checkWriter();
+        idBase = base;
+        nextId = Math.max(nextId, base + 1);
+    }
+
+    // Ids from other models' ranges, e.g. items added by a collaborator, must not move nextId there.
+    private void reserveId(long id) {
+        if (id > idBase && id <= idBase + ID_RANGE) {
+            nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    /**
+     * Gives every item a new id from the current range, keeping the paint
+     * order, e.g. so a design opened before joining a session cannot clash
+     * with the ids other collaborators hand out.
+     */
+    public void renumber() {
+        checkWriter();
+        itemsById.clear();
+        nextId = idBase + 1;
+        PersistentLongMap<ItemState> states = PersistentLongMap.empty();
+        for (FurnitureItem item : furnitureItems) {
+            ItemState previous = snapshot.getItem(item.getId());
+            item.setId(nextId++);
+            itemsById.put(item.getId(), item);
+            states = states.with(item.getId(), new ItemState(item, previous != null ? previous.order : nextOrder++));
+        }
+        snapshot = snapshot.withItems(states);
+        fire(new DesignChange(DesignChange.Kind.RESET, null, null));
+    }
+
+    /** Moves the item to the top of the paint order; no event, as only 2D stacking changes. */
+    public void bringToFront(FurnitureItem item) {
+        checkWriter();
+        if (furnitureItems.remove(item)) {
+            furnitureItems.add(item);
+            record(item, nextOrder++);
+        }
+    }
+
+    public void setRoom(double width, double height, String shape, Color color) {
+        checkWriter();
+        snapshot = snapshot.withRoom(width, height, shape, color);
+        fire(new DesignChange(DesignChange.Kind.ROOM_CHANGED, null, null));
+    }
+
+    public void clear() {
+        checkWriter();
+        furnitureItems.clear();
+        itemsById.clear();
+        snapshot = snapshot.withItems(PersistentLongMap.empty());
+        fire(new DesignChange(DesignChange.Kind.RESET, null, null));
+    }
+
+    /** Topmost item containing the point, or null. */
+    public FurnitureItem itemAt(Point p) {
+        for (int i = furnitureItems.size() - 1; i >= 0; i--) {
+            FurnitureItem item = furnitureItems.get(i);
+            if (item.contains(p)) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    public FurnitureItem findById(long id) {
+        return itemsById.get(id);
+    }
+
+    public java.util.List<FurnitureItem> getItems() {
+        return Collections.unmodifiableList(furnitureItems);
+    }
+
+    public double getRoomWidth() { return snapshot.getRoomWidth(); }
+    public double getRoomHeight() { return snapshot.getRoomHeight(); }
+    public String getRoomShape() { return snapshot.getRoomShape(); }
+    public Color getRoomColor() { return snapshot.getRoomColor(); }
+
+    /** The floor outline in metres, built from the room shape on first use. */
+    public RoomPolygon getRoomPolygon() {
+        return snapshot.getRoomPolygon();
+    }
+
+    private void record(FurnitureItem item) {
+        ItemState previous = snapshot.getItem(item.getId());
+        record(item, previous != null ? previous.order : nextOrder++);
+    }
+
+    private void record(FurnitureItem item, long order) {
+        snapshot = snapshot.withItems(snapshot.getItemMap().with(item.getId(), new ItemState(item, order)));
+    }
+
+    /**
+     * The design as it is now. Immutable, so it can be passed to another
+     * thread while editing continues. May be called from any thread.
+     */
+    public DesignSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /** A copy of the design whose items are not shared with the model. */
+    public DesignData getDesignData() {
+        return snapshot.toDesignData();
+    }
+
+    /**
+     * Replaces the design with copies of the given items, so the caller's
+     * data, e.g. a room kept by a building, is never edited through the model.
+     */
+    public void setDesignData(DesignData data) {
+        checkWriter();
+        furnitureItems.clear();
+        itemsById.clear();
+        nextId = idBase + 1;
+        for (FurnitureItem source : data.furnitureItems) {
+            reserveId(source.getId());
+        }
+        for (FurnitureItem source : data.furnitureItems) {
+            FurnitureItem item = new ItemState(source, 0).toItem();
+            // Designs saved before items had ids load with id 0.
+            if (item.getId() == 0 || itemsById.containsKey(item.getId())) {
+                item.setId(nextId++);
+            }
+            item.loadImage();
+            furnitureItems.add(item);
+            itemsById.put(item.getId(), item);
+        }
+        PersistentLongMap<ItemState> states = PersistentLongMap.empty();
+        for (FurnitureItem item : furnitureItems) {
+            states = states.with(item.getId(), new ItemState(item, nextOrder++));
+        }
+        snapshot = snapshot.withDesign(data.roomWidth, data.roomHeight, data.roomShape, data.roomColor, states);
+        fire(new DesignChange(DesignChange.Kind.RESET, null, null));
+    }
+}
+
+interface DesignModelListener {
+    void designChanged(DesignChange change);
+}
+
+class DesignChange {
+    enum Kind { ITEM_ADDED, ITEM_MOVED, ITEM_TRANSFORMED, ITEM_REMOVED, ROOM_CHANGED, RESET }
+
+    final Kind kind;
+    final FurnitureItem item;
+    final Rectangle previousBounds;
+
+    DesignChange(Kind kind, FurnitureItem item, Rectangle previousBounds) {
+        this.kind = kind;
+        this.item = item;
+        this.previousBounds = previousBounds;
+    }
+}
@@ -0,0 +1,331 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import java.awt.*;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Edits a {@link DesignModel} confined to the Swing event thread as fast as a
+ * busy user would, while background threads autosave, analyse and query the
+ * design and one more thread submits edits of its own. Reports how long edit
+ * tasks waited for and ran on the event thread, first alone (after a warm-up)
+ * and then with the background work, and checks that every snapshot the readers saw was
+ * consistent and stayed unchanged while editing went on.
+ *
+ * <p>With {@code --locked} the readers instead copy the live items under a
+ * lock the editor also takes, which is how a design had to be read before
+ * snapshots, for comparison.
+ *
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.DesignModelStress \
+ *     [items] [seconds] [readers] [--locked]
+ * </pre>
+ */
+class DesignModelStress {
+    private static final String[] TYPES = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+    private static final int EDITS_PER_TASK = 5;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        java.util.List<String> options = new ArrayList<>(Arrays.asList(args));
+        boolean locked = options.remove("--locked");
+        int itemCount = options.size() > 0 ? Integer.parseInt(options.get(0)) : 2000;
+        int seconds = options.size() > 1 ? Integer.parseInt(options.get(1)) : 5;
+        int readerCount = options.size() > 2 ? Integer.parseInt(options.get(2)) : 3;
+
+        DesignModel model = new DesignModel();
+        Random random = new Random(42);
+        SwingUtilities.invokeAndWait(() -> {
+            model.confineTo(SwingUtilities::invokeLater, SwingUtilities::isEventDispatchThread);
+            model.setRoom(20, 14, "Rectangle", Color.WHITE);
+            for (int i = 0; i < itemCount; i++) {
+                model.add(randomItem(random));
+            }
+        });
+
+        // Edits must not be accepted from anywhere but the event thread.
+        boolean rejected = false;
+        try {
+            model.move(model.snapshot().getItems().get(0).toItem(), 1, 1);
+        } catch (IllegalStateException ex) {
+            rejected = true;
+        }
+
+        Object lock = new Object();
+        Editor editor = new Editor(model, random, locked ? lock : null);
+        System.out.printf("%d items, %d edits per event-thread task every ms, %s readers%n", itemCount,
+                EDITS_PER_TASK, locked ? "locking" : "snapshot");
+        editor.run(2);
+        long[][] alone = editor.run(seconds);
+        report("editing alone", alone, editor);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        AtomicLong failures = new AtomicLong();
+        AtomicLong submitted = new AtomicLong();
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readerCount; i++) {
+            Reader reader = new Reader(model, locked ? lock : null, i, running, reads, failures);
+            threads.add(new Thread(reader, "reader-" + i));
+        }
+        threads.add(new Thread(() -> {
+            // An importer adding and removing pieces from off the event thread.
+            Random own = new Random(7);
+            while (running.get()) {
+                FurnitureItem item = randomItem(own);
+                try {
+                    model.submit(m -> guarded(lock, locked, () -> m.add(item))).get();
+                    model.submit(m -> guarded(lock, locked, () -> m.remove(m.findById(item.getId())))).get();
+                    submitted.addAndGet(2);
+                    Thread.sleep(5);
+                } catch (InterruptedException | ExecutionException ex) {
+                    failures.incrementAndGet();
+                    return;
+                }
+            }
+        }, "importer"));
+        for (Thread thread : threads) {
+            thread.setDaemon(true);
+            thread.start();
+        }
+        long[][] loaded = editor.run(seconds);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report("with " + readerCount + " readers", loaded, editor);
+        System.out.printf("reads: %d (%.0f/s), edits submitted from another thread: %d%n", reads.get(),
+                reads.get() / (double) seconds, submitted.get());
+
+        int[] mismatches = new int[1];
+        SwingUtilities.invokeAndWait(() -> mismatches[0] = audit(model));
+        System.out.printf("off-thread edit rejected: %s, reader check failures: %d, snapshot mismatches: %d%n",
+                rejected ? "yes" : "NO", failures.get(), mismatches[0]);
+        System.exit(0);
+    }
+
+    private static void guarded(Object lock, boolean locked, Runnable edit) {
+        if (locked) {
+            synchronized (lock) {
+                edit.run();
+            }
+        } else {
+            edit.run();
+        }
+    }
+
+    private static FurnitureItem randomItem(Random random) {
+        // A few sizes, so sprites are scaled once per size rather than per item.
+        return new FurnitureItem(TYPES[random.nextInt(TYPES.length)], 60 + random.nextInt(880),
+                60 + random.nextInt(580), 60 + 20 * random.nextInt(3), 60 + 20 * random.nextInt(3));
+    }
+
+    // Sorted wait times and run times, in nanoseconds.
+    private static void report(String label, long[][] samples, Editor editor) {
+        long[] waits = samples[0], runs = samples[1];
+        System.out.printf("%-16s %6d tasks, %5.0f edits/s; wait us p50 %5.0f p99 %6.0f max %7.0f;"
+                        + " run us p50 %4.0f p99 %5.0f; blocked on a lock %d times, %d ms%n", label, waits.length,
+                editor.lastEdits / editor.lastSeconds, percentile(waits, 0.50), percentile(waits, 0.99),
+                waits[waits.length - 1] / 1e3, percentile(runs, 0.50), percentile(runs, 0.99),
+                editor.lastBlockedCount, editor.lastBlockedMillis);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e3;
+    }
+
+    /** Compares the live items with the current snapshot, in paint order. */
+    private static int audit(DesignModel model) {
+        java.util.List<FurnitureItem> live = model.getItems();
+        java.util.List<ItemState> states = model.snapshot().getItems();
+        int mismatches = Math.abs(live.size() - states.size());
+        for (int i = 0; i < Math.min(live.size(), states.size()); i++) {
+            FurnitureItem item = live.get(i);
+            ItemState state = states.get(i);
+            if (item.getId() != state.id || item.getX() != state.x || item.getY() != state.y
+                    || item.getWidth() != state.width || item.getHeight() != state.height
+                    || item.getRotation() != state.rotation) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /** Posts a batch of edits to the event thread every millisecond, like dragging does. */
+    private static class Editor {
+        final DesignModel model;
+        final Random random;
+        final Object lock;
+        long lastEdits;
+        double lastSeconds;
+        long lastBlockedCount;
+        long lastBlockedMillis;
+
+        Editor(DesignModel model, Random random, Object lock) {
+            this.model = model;
+            this.random = random;
+            this.lock = lock;
+        }
+
+        /** Edits for the given time and returns the sorted wait and run times of the tasks. */
+        long[][] run(int seconds) throws InterruptedException {
+            // Time spent waiting for a lock, as opposed to waiting for the CPU.
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            threads.setThreadContentionMonitoringEnabled(true);
+            long[] edt = new long[1];
+            invokeAndWait(() -> edt[0] = Thread.currentThread().threadId());
+            ThreadInfo before = threads.getThreadInfo(edt[0]);
+            ArrayList<Long> waits = new ArrayList<>();
+            ArrayList<Long> runs = new ArrayList<>();
+            AtomicLong edits = new AtomicLong();
+            ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+            ticker.scheduleAtFixedRate(() -> {
+                long posted = System.nanoTime();
+                SwingUtilities.invokeLater(() -> {
+                    long started = System.nanoTime();
+                    guarded(lock, lock != null, this::editBatch);
+                    waits.add(started - posted);
+                    runs.add(System.nanoTime() - started);
+                    edits.addAndGet(EDITS_PER_TASK);
+                });
+            }, 0, 1, TimeUnit.MILLISECONDS);
+            Thread.sleep(seconds * 1000L);
+            ticker.shutdownNow();
+            ticker.awaitTermination(1, TimeUnit.SECONDS);
+            long[][] samples = new long[2][];
+            invokeAndWait(() -> {
+                samples[0] = waits.stream().mapToLong(Long::longValue).sorted().toArray();
+                samples[1] = runs.stream().mapToLong(Long::longValue).sorted().toArray();
+            });
+            ThreadInfo after = threads.getThreadInfo(edt[0]);
+            lastBlockedCount = after.getBlockedCount() - before.getBlockedCount();
+            lastBlockedMillis = after.getBlockedTime() - before.getBlockedTime();
+            lastEdits = edits.get();
+            lastSeconds = seconds;
+            return samples;
+        }
+
+        private void invokeAndWait(Runnable task) throws InterruptedException {
+            try {
+                SwingUtilities.invokeAndWait(task);
+            } catch (java.lang.reflect.InvocationTargetException ex) {
+                throw new IllegalStateException(ex.getCause());
+            }
+        }
+
+        // Mostly drags, with the occasional rotate, resize and replace.
+        private void editBatch() {
+            java.util.List<FurnitureItem> items = model.getItems();
+            for (int i = 0; i < EDITS_PER_TASK; i++) {
+                FurnitureItem item = items.get(random.nextInt(items.size()));
+                int action = random.nextInt(100);
+                if (action < 85) {
+                    int x = Math.max(50, Math.min(950, item.getX() + random.nextInt(21) - 10));
+                    int y = Math.max(50, Math.min(650, item.getY() + random.nextInt(21) - 10));
+                    model.setPosition(item, x, y);
+                } else if (action < 93) {
+                    model.rotate(item, 90);
+                } else if (action < 98) {
+                    // Between the seeded sizes, whose sprites are scaled during the warm-up: a
+                    // new size would time decoding on the event thread rather than the model.
+                    model.setGeometry(item, item.getX(), item.getY(), 60 + 20 * random.nextInt(3),
+                            60 + 20 * random.nextInt(3), item.getRotation());
+                } else {
+                    model.remove(item);
+                    model.add(randomItem(random));
+                }
+            }
+        }
+    }
+
+    /**
+     * Background work on the design: autosaving, adding up the bill of
+     * materials and hit-testing, with a short pause after each job.
+     */
+    private static class Reader implements Runnable {
+        final DesignModel model;
+        final Object lock;
+        final int index;
+        final AtomicBoolean running;
+        final AtomicLong reads;
+        final AtomicLong failures;
+        final PriceTable prices = CsvPriceTable.loadDefault();
+
+        Reader(DesignModel model, Object lock, int index, AtomicBoolean running, AtomicLong reads,
+                AtomicLong failures) {
+            this.model = model;
+            this.lock = lock;
+            this.index = index;
+            this.running = running;
+            this.reads = reads;
+            this.failures = failures;
+        }
+
+        public void run() {
+            Random random = new Random(index);
+            long lastVersion = -1;
+            try {
+                for (int job = index; running.get(); job++) {
+                    DesignSnapshot snapshot;
+                    if (lock != null) {
+                        synchronized (lock) {
+                            snapshot = copyLive();
+                        }
+                    } else {
+                        snapshot = model.snapshot();
+                    }
+                    if (lock == null && snapshot.getVersion() < lastVersion) {
+                        failures.incrementAndGet();
+                    }
+                    lastVersion = snapshot.getVersion();
+                    long before = checksum(snapshot);
+                    switch (job % 3) {
+                        case 0:
+                            ObjectOutputStream out = new ObjectOutputStream(new ByteArrayOutputStream());
+                            out.writeObject(snapshot.toDesignData());
+                            out.close();
+                            break;
+                        case 1:
+                            BillOfMaterials.recompute(snapshot, prices);
+                            break;
+                        default:
+                            for (int i = 0; i < 50; i++) {
+                                snapshot.itemAt(60 + random.nextInt(900), 60 + random.nextInt(600));
+                            }
+                            snapshot.itemsIn(new Rectangle(200, 200, 300, 200));
+                    }
+                    // The snapshot must not have changed under the reader while edits went on.
+                    if (checksum(snapshot) != before || snapshot.getItems().size() != snapshot.getItemCount()) {
+                        failures.incrementAndGet();
+                    }
+                    reads.incrementAndGet();
+                    Thread.sleep(20);
+                }
+            } catch (IOException | InterruptedException ex) {
+                failures.incrementAndGet();
+            }
+        }
+
+        // What a reader had to do without snapshots: copy every live item while holding the lock.
+        private DesignSnapshot copyLive() {
+            PersistentLongMap<ItemState> states = PersistentLongMap.empty();
+            long order = 0;
+            for (FurnitureItem item : new ArrayList<>(model.getItems())) {
+                states = states.with(item.getId(), new ItemState(item, order++));
+            }
+            return DesignSnapshot.EMPTY.withDesign(model.getRoomWidth(), model.getRoomHeight(),
+                    model.getRoomShape(), model.getRoomColor(), states);
+        }
+
+        private static long checksum(DesignSnapshot snapshot) {
+            long[] sum = new long[1];
+            snapshot.getItemMap().forEach((id, item) ->
+                    sum[0] += id * 31 + item.x * 7L + item.y * 13L + item.width + item.height * 3L + item.rotation);
+            return sum[0];
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.util.*;
+
+/**
+ * An immutable view of a design at one point in time. Taking one is O(1):
+ * {@link DesignModel} keeps its furniture in a {@link PersistentLongMap} that
+ * every edit replaces with a new version sharing all untouched structure, and
+ * a snapshot simply holds on to the version current when it was taken. A
+ * snapshot can be handed to another thread, e.g. to save or analyse the
+ * design, while editing continues, and everything it offers, including the
+ * queries, is safe to call from any thread.
+ */
+final class DesignSnapshot {
+    static final DesignSnapshot EMPTY = new DesignSnapshot(5.0, 3.0, "Rectangle", Color.WHITE,
+            PersistentLongMap.empty(), 0, null);
+
+    private final double roomWidth;
+    private final double roomHeight;
+    private final String roomShape;
+    private final Color roomColor;
+    private final PersistentLongMap<ItemState> items;
+    private final long version;
+    // Built on first use and passed on to later versions of the same room.
+    // Racing threads may each build one, which is harmless as it is immutable.
+    private RoomPolygon roomPolygon;
+
+    DesignSnapshot(double roomWidth, double roomHeight, String roomShape, Color roomColor,
+            PersistentLongMap<ItemState> items, long version, RoomPolygon roomPolygon) {
+        this.roomWidth = roomWidth;
+        this.roomHeight = roomHeight;
+        this.roomShape = roomShape;
+        this.roomColor = roomColor;
+        this.items = items;
+        this.version = version;
+        this.roomPolygon = roomPolygon;
+    }
+
+    DesignSnapshot withRoom(double width, double height, String shape, Color color) {
+        return new DesignSnapshot(width, height, shape, color, items, version + 1, null);
+    }
+
+    DesignSnapshot withItems(PersistentLongMap<ItemState> items) {
+        return new DesignSnapshot(roomWidth, roomHeight, roomShape, roomColor, items, version + 1, roomPolygon);
+    }
+
+    DesignSnapshot withDesign(double width, double height, String shape, Color color,
+            PersistentLongMap<ItemState> items) {
+        return new DesignSnapshot(width, height, shape, color, items, version + 1, null);
+    }
+
+    public double getRoomWidth() { return roomWidth; }
+    public double getRoomHeight() { return roomHeight; }
+    public String getRoomShape() { return roomShape; }
+    public Color getRoomColor() { return roomColor; }
+
+    /** Counts the edits made to the model up to this snapshot; a later snapshot has a higher version. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** The floor outline in metres. */
+    public RoomPolygon getRoomPolygon() {
+        RoomPolygon polygon = roomPolygon;
+        if (polygon == null) {
+            polygon = RoomPolygon.of(roomShape, roomWidth, roomHeight);
+            roomPolygon = polygon;
+        }
+        return polygon;
+    }
+
+    PersistentLongMap<ItemState> getItemMap() {
+        return items;
+    }
+
+    public int getItemCount() {
+        return items.size();
+    }
+
+    public ItemState getItem(long id) {
+        return items.get(id);
+    }
+
+    /** The items in paint order, bottom first. */
+    public java.util.List<ItemState> getItems() {
+        ArrayList<ItemState> list = new ArrayList<>(items.size());
+        items.forEach((id, item) -> list.add(item));
+        list.sort(Comparator.comparingLong(item -> item.order));
+        return list;
+    }
+
+    /** Topmost item whose footprint contains the point, in panel pixels, or null. */
+    public ItemState itemAt(int x, int y) {
+        ItemState[] top = new ItemState[1];
+        items.forEach((id, item) -> {
+            if ((top[0] == null || item.order > top[0].order) && item.contains(x, y)) {
+                top[0] = item;
+            }
+        });
+        return top[0];
+    }
+
+    /** The items whose bounds intersect the area, in panel pixels, in paint order. */
+    public java.util.List<ItemState> itemsIn(Rectangle area) {
+        ArrayList<ItemState> list = new ArrayList<>();
+        items.forEach((id, item) -> {
+            if (item.getBounds().intersects(area)) {
+                list.add(item);
+            }
+        });
+        list.sort(Comparator.comparingLong(item -> item.order));
+        return list;
+    }
+
+    /** A design that owns fresh copies of the items, e.g. for serialization. */
+    public DesignData toDesignData() {
+        ArrayList<FurnitureItem> list = new ArrayList<>(items.size());
+        for (ItemState state : getItems()) {
+            list.add(state.toItem());
+        }
+        return new DesignData(roomWidth, roomHeight, roomShape, roomColor, list);
+    }
+}
+
+/** Immutable value of one furniture item, with its position in the paint order. */
+final class ItemState {
+    final long id;
+    final String type;
+    final int x, y, width, height;
+    final int originalWidth, originalHeight;
+    final int rotation;
+    final long order;
+
+    ItemState(FurnitureItem item, long order) {
+        this.id = item.getId();
+        this.type = item.getType();
+        this.x = item.getX();
+        this.y = item.getY();
+        this.width = item.getWidth();
+        this.height = item.getHeight();
+        this.originalWidth = item.getOriginalWidth();
+        this.originalHeight = item.getOriginalHeight();
+        this.rotation = item.getRotation();
+        this.order = order;
+    }
+
+    /** The rotated footprint's bounding box, as {@link FurnitureItem#getBounds()}. */
+    Rectangle getBounds() {
+        Rectangle rect = new Rectangle(x, y, width, height);
+        return rotation % 180 == 0 ? rect : outline(rect).getBounds();
+    }
+
+    boolean contains(int px, int py) {
+        Rectangle rect = new Rectangle(x, y, width, height);
+        return rotation % 360 == 0 ? rect.contains(px, py) : outline(rect).contains(px, py);
+    }
+
+    private Shape outline(Rectangle rect) {
+        AffineTransform transform = new AffineTransform();
+        transform.rotate(Math.toRadians(rotation), x + width/2, y + height/2);
+        return transform.createTransformedShape(rect);
+    }
+
+    /** A detached copy without its sprite; whoever draws it calls {@link FurnitureItem#loadImage()}. */
+    FurnitureItem toItem() {
+        FurnitureItem item = FurnitureItem.withoutImage(type, originalWidth, originalHeight);
+        item.setGeometry(x, y, width, height, rotation);
+        item.setId(id);
+        return item;
+    }
+}
+
+/**
+ * Immutable map from long keys to values: a hash array mapped trie with 32
+ * children per node. Updates copy only the nodes on the path to the changed
+ * key, so every version stays valid and versions share most of their nodes.
+ * Keys are scrambled with a bijective mix, so two keys never have the same
+ * 64-bit hash and no collision nodes are needed.
+ */
+final class PersistentLongMap<V> {
+    private static final PersistentLongMap<Object> EMPTY = new PersistentLongMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentLongMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentLongMap<V> empty() {
+        return (PersistentLongMap<V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        long hash = mix(key);
+        Node node = root;
+        for (int shift = 0; node != null; shift += 5) {
+            int bit = 1 << ((hash >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    public PersistentLongMap<V> with(long key, V value) {
+        Leaf leaf = new Leaf(key, mix(key), value);
+        if (root == null) {
+            return new PersistentLongMap<>(new Node(0, new Object[0]).insert(leaf, 0), 1);
+        }
+        boolean[] added = new boolean[1];
+        Node newRoot = with(root, leaf, 0, added);
+        return newRoot == root ? this : new PersistentLongMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    private static Node with(Node node, Leaf leaf, int shift, boolean[] added) {
+        int bit = 1 << ((leaf.hash >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) {
+            added[0] = true;
+            return node.insert(leaf, shift);
+        }
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            Node child = (Node) slot;
+            replacement = with(child, leaf, shift + 5, added);
+            if (replacement == child) {
+                return node;
+            }
+        } else {
+            Leaf existing = (Leaf) slot;
+            if (existing.key == leaf.key) {
+                if (existing.value == leaf.value) {
+                    return node;
+                }
+                replacement = leaf;
+            } else {
+                added[0] = true;
+                replacement = merge(existing, leaf, shift + 5);
+            }
+        }
+        Object[] slots = node.slots.clone();
+        slots[index] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Node merge(Leaf a, Leaf b, int shift) {
+        int indexA = (int) (a.hash >>> shift) & 31;
+        int indexB = (int) (b.hash >>> shift) & 31;
+        if (indexA == indexB) {
+            return new Node(1 << indexA, new Object[]{merge(a, b, shift + 5)});
+        }
+        int bitmap = (1 << indexA) | (1 << indexB);
+        return indexA < indexB ? new Node(bitmap, new Object[]{a, b}) : new Node(bitmap, new Object[]{b, a});
+    }
+
+    public PersistentLongMap<V> without(long key) {
+        if (root == null) {
+            return this;
+        }
+        Object newRoot = without(root, key, mix(key), 0);
+        if (newRoot == root) {
+            return this;
+        }
+        if (newRoot == null) {
+            return empty();
+        }
+        Node node = newRoot instanceof Leaf
+                ? new Node(0, new Object[0]).insert((Leaf) newRoot, 0) : (Node) newRoot;
+        return new PersistentLongMap<>(node, size - 1);
+    }
+
+    // Returns the node unchanged if the key is absent, null if the node became
+    // empty, or a lone remaining leaf so the parent can hold it directly.
+    private static Object without(Node node, long key, long hash, int shift) {
+        int bit = 1 << ((hash >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[index];
+        Object replacement;
+        if (slot instanceof Node) {
+            replacement = without((Node) slot, key, hash, shift + 5);
+            if (replacement == slot) {
+                return node;
+            }
+        } else if (((Leaf) slot).key == key) {
+            replacement = null;
+        } else {
+            return node;
+        }
+
+        if (replacement != null) {
+            if (replacement instanceof Leaf && node.slots.length == 1) {
+                return replacement;
+            }
+            Object[] slots = node.slots.clone();
+            slots[index] = replacement;
+            return new Node(node.bitmap, slots);
+        }
+        if (node.slots.length == 1) {
+            return null;
+        }
+        if (node.slots.length == 2 && node.slots[1 - index] instanceof Leaf) {
+            return node.slots[1 - index];
+        }
+        Object[] slots = new Object[node.slots.length - 1];
+        System.arraycopy(node.slots, 0, slots, 0, index);
+        System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+        return new Node(node.bitmap & ~bit, slots);
+    }
+
+    interface Visitor<V> {
+        void visit(long key, V value);
+    }
+
+    public void forEach(Visitor<V> visitor) {
+        if (root != null) {
+            forEach(root, visitor);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, Visitor<V> visitor) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                visitor.visit(leaf.key, (V) leaf.value);
+            } else {
+                forEach((Node) slot, visitor);
+            }
+        }
+    }
+
+    // Multiply by an odd constant and xor-shift: both are bijections on longs.
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        Node insert(Leaf leaf, int shift) {
+            int bit = 1 << ((leaf.hash >>> shift) & 31);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object[] newSlots = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, newSlots, 0, index);
+            newSlots[index] = leaf;
+            System.arraycopy(slots, index, newSlots, index + 1, slots.length - index);
+            return new Node(bitmap | bit, newSlots);
+        }
+    }
+
+    private static final class Leaf {
+        final long key;
+        final long hash;
+        final Object value;
+
+        Leaf(long key, long hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+}
@@ -6,17 +6,79 @@ import java.awt.event.*;
 import java.util.*;
 import java.io.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 
 public class FurnitureDesignApp {
+    private static final long MAIN_STARTED = System.nanoTime();
+    private static boolean firstPaintLogged = false;
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            new MainFrame().setVisible(true);
+            if (GraphicsEnvironment.isHeadless()) {
+                paintOffscreen();
+            } else {
+                new MainFrame().setVisible(true);
+            }
         });
     }
+
+    /**
+     * Logs the time from JVM start, and from entering main, to the first
+     * paint of the window. With -Dfurnifit.exitAfterFirstPaint=true the app
+     * then exits, for timing cold starts and for the CDS training run.
+     */
+    static void firstPainted() {
+        if (firstPaintLogged) {
+            return;
+        }
+        firstPaintLogged = true;
+        long sinceMain = (System.nanoTime() - MAIN_STARTED) / 1_000_000;
+        long sinceLaunch = java.lang.management.ManagementFactory.getRuntimeMXBean().getUptime();
+        System.err.println("Startup: first paint " + sinceLaunch + " ms after JVM start, " + sinceMain + " ms after main");
+        if (Boolean.getBoolean("furnifit.exitAfterFirstPaint")) {
+            System.exit(0);
+        }
+    }
+
+    // Without a display, builds the panels MainFrame shows before its first
+    // paint and paints them into an image, so the same startup path can still
+    // be timed. There are no menus, frame or native peers, so it is faster
+    // than a windowed start and a CDS archive trained this way misses them.
+    private static void paintOffscreen() {
+        DesignPanel designPanel = new DesignPanel();
+        JPanel content = new JPanel(new BorderLayout());
+        JPanel leftPanel = new JPanel(new BorderLayout());
+        leftPanel.add(new RoomConfigPanel(), BorderLayout.NORTH);
+        leftPanel.add(new FurnitureSelectionPanel(designPanel), BorderLayout.CENTER);
+        content.add(leftPanel, BorderLayout.WEST);
+        content.add(designPanel, BorderLayout.CENTER);
+        JPanel analysisPanel = new JPanel(new BorderLayout());
+        analysisPanel.setPreferredSize(new Dimension(260, 0));
+        content.add(analysisPanel, BorderLayout.EAST);
+        content.setSize(1200, 800);
+        content.doLayout();
+        content.validate();
+
+        BufferedImage image = new BufferedImage(1200, 800, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        content.printAll(g2d);
+        g2d.dispose();
+        firstPainted();
+    }
 }
 
 class MainFrame extends JFrame {
     private DesignPanel designPanel;
+    private PreviewPanel3D previewPanel;
+    private BuildingPanel buildingPanel;
+    private RoomInfo currentRoom = null;
+    private boolean roomEdited = false;
+    private CollabServer collabServer;
+    private CollabClient collabClient;
+    private JPanel viewPanel;
+    private JPanel analysisPanel;
+    private boolean analysisStarted = false;
     private RoomConfigPanel configPanel;
     private FurnitureSelectionPanel furniturePanel;
     private JButton toggle3DButton;
@@ -26,6 +88,8 @@ class MainFrame extends JFrame {
     private JButton decreaseSizeButton;
     private JButton clearButton;
     private boolean is3DView = false;
+    private JFileChooser fileChooser;
+    private TraceRecorder traceRecorder;
 
     public MainFrame() {
         setTitle("Furniture Design Application");
@@ -37,17 +101,69 @@ class MainFrame extends JFrame {
         JMenu fileMenu = new JMenu("File");
         JMenuItem saveItem = new JMenuItem("Save Design");
         JMenuItem loadItem = new JMenuItem("Load Design");
+        JMenuItem compareItem = new JMenuItem("Compare With Saved Design");
+        JMenuItem clearCompareItem = new JMenuItem("Clear Comparison");
+        JMenuItem exportSvgItem = new JMenuItem("Export SVG");
+        JCheckBoxMenuItem recordTraceItem = new JCheckBoxMenuItem("Record Interaction Trace");
         JMenuItem exitItem = new JMenuItem("Exit");
 
         saveItem.addActionListener(e -> saveDesign());
         loadItem.addActionListener(e -> loadDesign());
+        compareItem.addActionListener(e -> compareDesign());
+        clearCompareItem.addActionListener(e -> designPanel.setDiffOverlay(null));
+        exportSvgItem.addActionListener(e -> exportSvg(false));
+        recordTraceItem.addActionListener(e -> toggleTraceRecording(recordTraceItem));
         exitItem.addActionListener(e -> System.exit(0));
 
         fileMenu.add(saveItem);
         fileMenu.add(loadItem);
         fileMenu.addSeparator();
+        fileMenu.add(compareItem);
+        fileMenu.add(clearCompareItem);
+        fileMenu.addSeparator();
+        fileMenu.add(exportSvgItem);
+        fileMenu.add(recordTraceItem);
+        fileMenu.addSeparator();
         fileMenu.add(exitItem);
         menuBar.add(fileMenu);
+
+        JMenu buildingMenu = new JMenu("Building");
+        JMenuItem newBuildingItem = new JMenuItem("New Building");
+        JMenuItem openBuildingItem = new JMenuItem("Open Building");
+        JMenuItem saveBuildingItem = new JMenuItem("Save Building");
+        JMenuItem addRoomItem = new JMenuItem("Add Current Design as Room");
+        JMenuItem floorPlanItem = new JMenuItem("Show Floor Plan");
+        JMenuItem exportPlanItem = new JMenuItem("Export Floor Plan SVG");
+
+        newBuildingItem.addActionListener(e -> newBuilding());
+        openBuildingItem.addActionListener(e -> openBuilding());
+        saveBuildingItem.addActionListener(e -> saveBuilding());
+        addRoomItem.addActionListener(e -> addRoomToBuilding());
+        floorPlanItem.addActionListener(e -> showFloorPlan());
+        exportPlanItem.addActionListener(e -> exportSvg(true));
+
+        buildingMenu.add(newBuildingItem);
+        buildingMenu.add(openBuildingItem);
+        buildingMenu.add(saveBuildingItem);
+        buildingMenu.addSeparator();
+        buildingMenu.add(addRoomItem);
+        buildingMenu.add(floorPlanItem);
+        buildingMenu.add(exportPlanItem);
+        menuBar.add(buildingMenu);
+
+        JMenu collabMenu = new JMenu("Collaborate");
+        JMenuItem hostItem = new JMenuItem("Host Session");
+        JMenuItem joinItem = new JMenuItem("Join Session");
+        JMenuItem leaveItem = new JMenuItem("Leave Session");
+
+        hostItem.addActionListener(e -> hostSession());
+        joinItem.addActionListener(e -> joinSession());
+        leaveItem.addActionListener(e -> leaveSession());
+
+        collabMenu.add(hostItem);
+        collabMenu.add(joinItem);
+        collabMenu.add(leaveItem);
+        menuBar.add(collabMenu);
         setJMenuBar(menuBar);
 
         configPanel = new RoomConfigPanel();
@@ -97,42 +213,140 @@ class MainFrame extends JFrame {
         leftPanel.add(buttonPanel, BorderLayout.SOUTH);
 
         add(leftPanel, BorderLayout.WEST);
-        add(designPanel, BorderLayout.CENTER);
-
+        viewPanel = new JPanel(new CardLayout());
+        viewPanel.add(designPanel, "2D");
+        add(viewPanel, BorderLayout.CENTER);
+        analysisPanel = new JPanel(new BorderLayout());
+        analysisPanel.setPreferredSize(new Dimension(260, 0));
+        add(analysisPanel, BorderLayout.EAST);
+
+        designPanel.getModel().addListener(change -> roomEdited = true);
+        designPanel.addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent e) {
+                if (collabClient != null) {
+                    collabClient.setViewport(new Rectangle(0, 0, designPanel.getWidth(), designPanel.getHeight()));
+                }
+            }
+        });
         configPanel.setConfigListener(designPanel);
     }
 
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+        FurnitureDesignApp.firstPainted();
+        if (!analysisStarted) {
+            analysisStarted = true;
+            fillAnalysisPanel();
+        }
+    }
+
+    // The bill of materials and clearance panels are built after the first
+    // paint: the bill's HTML totals label alone loads Swing's HTML renderer,
+    // which is most of their cost. The price table is read in the background.
+    private void fillAnalysisPanel() {
+        new SwingWorker<CsvPriceTable, Void>() {
+            protected CsvPriceTable doInBackground() {
+                return CsvPriceTable.loadDefault();
+            }
+
+            protected void done() {
+                CsvPriceTable prices;
+                try {
+                    prices = get();
+                } catch (Exception ex) {
+                    System.err.println("Could not load prices: " + ex.getMessage());
+                    prices = new CsvPriceTable();
+                }
+                analysisPanel.add(new BillOfMaterialsPanel(new BillOfMaterials(designPanel.getModel(), prices)),
+                        BorderLayout.CENTER);
+                analysisPanel.add(new ClearancePanel(designPanel), BorderLayout.SOUTH);
+                analysisPanel.revalidate();
+                analysisPanel.repaint();
+            }
+        }.execute();
+    }
+
+    // The floor plan view is built the first time a building is shown.
+    private BuildingPanel buildingPanel() {
+        if (buildingPanel == null) {
+            buildingPanel = new BuildingPanel();
+            buildingPanel.addRoomOpenListener(this::openRoom);
+            viewPanel.add(buildingPanel, "Plan");
+        }
+        return buildingPanel;
+    }
+
+    private BuildingDocument currentBuilding() {
+        return buildingPanel != null ? buildingPanel.getDocument() : null;
+    }
+
+    // Shared by every open and save dialog: a JFileChooser is slow to create,
+    // and reusing it also keeps the last directory.
+    private JFileChooser sharedFileChooser(JComponent accessory) {
+        if (fileChooser == null) {
+            fileChooser = new JFileChooser();
+        }
+        fileChooser.setAccessory(accessory);
+        fileChooser.setSelectedFile(null);
+        return fileChooser;
+    }
+
     private void toggleView() {
         is3DView = !is3DView;
+        if (is3DView && previewPanel == null) {
+            // The 3D preview is built on first use to keep it off the startup path.
+            previewPanel = new PreviewPanel3D();
+            previewPanel.setModel(designPanel.getModel());
+            viewPanel.add(previewPanel, "3D");
+        }
         if (is3DView) {
             toggle3DButton.setText("Switch to 2D View");
-            JOptionPane.showMessageDialog(this, "3D view would be implemented with Java3D/JOGL");
+            ((CardLayout) viewPanel.getLayout()).show(viewPanel, "3D");
         } else {
             toggle3DButton.setText("Switch to 3D View");
+            ((CardLayout) viewPanel.getLayout()).show(viewPanel, "2D");
             designPanel.repaint();
         }
     }
 
     private void saveDesign() {
-        JFileChooser fileChooser = new JFileChooser();
+        JFileChooser fileChooser = sharedFileChooser(null);
         if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
-            try (ObjectOutputStream oos = new ObjectOutputStream(
-                    new FileOutputStream(fileChooser.getSelectedFile()))) {
-                oos.writeObject(designPanel.getDesignData());
-                JOptionPane.showMessageDialog(this, "Design saved successfully!");
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(this, "Error saving design: " + ex.getMessage(),
-                        "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            // Written from a snapshot in the background, so editing can go on meanwhile.
+            DesignSnapshot snapshot = designPanel.getModel().snapshot();
+            File file = fileChooser.getSelectedFile();
+            new SwingWorker<Void, Void>() {
+                protected Void doInBackground() throws Exception {
+                    try (ObjectOutputStream oos = new ObjectOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file)))) {
+                        oos.writeObject(snapshot.toDesignData());
+                    }
+                    return null;
+                }
+
+                protected void done() {
+                    try {
+                        get();
+                        JOptionPane.showMessageDialog(MainFrame.this, "Design saved successfully!");
+                    } catch (Exception ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(MainFrame.this, "Error saving design: " + cause.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
         }
     }
 
     private void loadDesign() {
-        JFileChooser fileChooser = new JFileChooser();
+        JFileChooser fileChooser = sharedFileChooser(null);
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
             try (ObjectInputStream ois = new ObjectInputStream(
                     new FileInputStream(fileChooser.getSelectedFile()))) {
                 DesignData data = (DesignData) ois.readObject();
+                storeCurrentRoom();
+                currentRoom = null;
                 designPanel.setDesignData(data);
                 configPanel.setRoomDimensions(data.roomWidth, data.roomHeight);
                 JOptionPane.showMessageDialog(this, "Design loaded successfully!");
@@ -143,6 +357,234 @@ class MainFrame extends JFrame {
         }
     }
 
+    // Compares a saved version (before) with the design being edited (after).
+    private void compareDesign() {
+        JFileChooser fileChooser = sharedFileChooser(null);
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                DesignData before = DesignDiff.read(fileChooser.getSelectedFile());
+                // Compare against the live items so the overlay follows further edits.
+                DesignModel model = designPanel.getModel();
+                DesignData after = new DesignData(model.getRoomWidth(), model.getRoomHeight(), model.getRoomShape(),
+                        model.getRoomColor(), new ArrayList<>(model.getItems()));
+                DesignDiff diff = DesignDiff.compare(before, after);
+                designPanel.setDiffOverlay(diff);
+                JOptionPane.showMessageDialog(this, diff.getSummary());
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Error comparing design: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    // Starts recording the design panel to a trace file for TraceReplay, or stops and closes it.
+    private void toggleTraceRecording(JCheckBoxMenuItem menuItem) {
+        if (traceRecorder != null) {
+            long events = traceRecorder.getEventCount();
+            try {
+                traceRecorder.stop();
+                JOptionPane.showMessageDialog(this, "Recorded " + events + " events.");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, "Error writing trace: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            traceRecorder = null;
+        } else {
+            JFileChooser fileChooser = sharedFileChooser(null);
+            if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+                try {
+                    traceRecorder = TraceRecorder.start(designPanel, fileChooser.getSelectedFile());
+                } catch (IOException ex) {
+                    JOptionPane.showMessageDialog(this, "Error starting trace: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+        menuItem.setSelected(traceRecorder != null);
+    }
+
+    // Exports the design, or every room of the building, on a background thread.
+    private void exportSvg(boolean wholeBuilding) {
+        BuildingDocument building = currentBuilding();
+        if (wholeBuilding && building == null) {
+            JOptionPane.showMessageDialog(this, "No building is open.");
+            return;
+        }
+        JCheckBox embedBox = new JCheckBox("Embed sprites", true);
+        JFileChooser fileChooser = sharedFileChooser(embedBox);
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            File chosen = fileChooser.getSelectedFile();
+            File file = chosen.getName().toLowerCase().endsWith(".svg") ? chosen : new File(chosen.getPath() + ".svg");
+            boolean embed = embedBox.isSelected();
+            DesignSnapshot snapshot = designPanel.getModel().snapshot();
+            if (wholeBuilding) {
+                storeCurrentRoom();
+            }
+            new SwingWorker<Void, Void>() {
+                protected Void doInBackground() throws Exception {
+                    if (wholeBuilding) {
+                        SvgExporter.export(building, file, embed);
+                    } else {
+                        SvgExporter.export(snapshot, file, embed);
+                    }
+                    return null;
+                }
+
+                protected void done() {
+                    try {
+                        get();
+                        JOptionPane.showMessageDialog(MainFrame.this, "Exported to " + file.getName());
+                    } catch (Exception ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(MainFrame.this, "Error exporting: " + cause.getMessage(),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            }.execute();
+        }
+    }
+
+    private void newBuilding() {
+        storeCurrentRoom();
+        if (currentBuilding() != null) {
+            currentBuilding().close();
+        }
+        BuildingDocument building = new BuildingDocument();
+        currentRoom = building.addRoom("Room 1", designPanel.getDesignData());
+        roomEdited = false;
+        buildingPanel().setDocument(building);
+        showFloorPlan();
+    }
+
+    private void openBuilding() {
+        JFileChooser fileChooser = sharedFileChooser(null);
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                BuildingDocument building = BuildingDocument.open(fileChooser.getSelectedFile());
+                storeCurrentRoom();
+                if (currentBuilding() != null) {
+                    currentBuilding().close();
+                }
+                currentRoom = null;
+                buildingPanel().setDocument(building);
+                showFloorPlan();
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Error opening building: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private void saveBuilding() {
+        BuildingDocument building = currentBuilding();
+        if (building == null) {
+            JOptionPane.showMessageDialog(this, "No building is open.");
+            return;
+        }
+        JFileChooser fileChooser = sharedFileChooser(null);
+        if (building.getFile() != null) {
+            fileChooser.setSelectedFile(building.getFile());
+        }
+        if (fileChooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+            try {
+                storeCurrentRoom();
+                building.save(fileChooser.getSelectedFile());
+                JOptionPane.showMessageDialog(this, "Building saved successfully!");
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Error saving building: " + ex.getMessage(),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    private void addRoomToBuilding() {
+        BuildingDocument building = currentBuilding();
+        if (building == null) {
+            newBuilding();
+            return;
+        }
+        storeCurrentRoom();
+        currentRoom = building.addRoom("Room " + (building.getRooms().size() + 1), designPanel.getDesignData());
+        roomEdited = false;
+        showFloorPlan();
+    }
+
+    private void showFloorPlan() {
+        storeCurrentRoom();
+        buildingPanel().setActiveRoom(currentRoom);
+        ((CardLayout) viewPanel.getLayout()).show(viewPanel, "Plan");
+    }
+
+    private void openRoom(RoomInfo room, DesignData data) {
+        storeCurrentRoom();
+        currentRoom = room;
+        designPanel.setDesignData(data);
+        configPanel.setRoomDimensions(data.roomWidth, data.roomHeight);
+        roomEdited = false;
+        is3DView = false;
+        toggle3DButton.setText("Switch to 3D View");
+        ((CardLayout) viewPanel.getLayout()).show(viewPanel, "2D");
+    }
+
+    // Writes edits of the room open in the design panel back into the building.
+    private void storeCurrentRoom() {
+        if (currentRoom != null && roomEdited && currentBuilding() != null) {
+            currentBuilding().updateRoom(currentRoom, designPanel.getDesignData());
+            roomEdited = false;
+        }
+    }
+
+    private void hostSession() {
+        String port = JOptionPane.showInputDialog(this, "Port:", "7420");
+        if (port == null) {
+            return;
+        }
+        try {
+            leaveSession();
+            collabServer = new CollabServer(null, Integer.parseInt(port.trim()), true);
+            connectSession("localhost", collabServer.getPort());
+        } catch (Exception ex) {
+            leaveSession();
+            JOptionPane.showMessageDialog(this, "Error hosting session: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void joinSession() {
+        String address = JOptionPane.showInputDialog(this, "Host and port:", "localhost:7420");
+        if (address == null) {
+            return;
+        }
+        try {
+            leaveSession();
+            int colon = address.lastIndexOf(':');
+            connectSession(address.substring(0, colon).trim(), Integer.parseInt(address.substring(colon + 1).trim()));
+        } catch (Exception ex) {
+            leaveSession();
+            JOptionPane.showMessageDialog(this, "Error joining session: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    private void connectSession(String host, int port) throws IOException {
+        collabClient = new CollabClient(designPanel.getModel(), SwingUtilities::invokeLater);
+        collabClient.connect(host, port);
+        collabClient.setViewport(new Rectangle(0, 0, designPanel.getWidth(), designPanel.getHeight()));
+        setTitle("Furniture Design Application - session " + host + ":" + port);
+    }
+
+    private void leaveSession() {
+        if (collabClient != null) {
+            collabClient.close();
+            collabClient = null;
+        }
+        if (collabServer != null) {
+            collabServer.close();
+            collabServer = null;
+        }
+        setTitle("Furniture Design Application");
+    }
+
     private void clearDesign() {
         int confirm = JOptionPane.showConfirmDialog(this,
                 "Are you sure you want to clear the entire design?",
@@ -160,6 +602,8 @@ class RoomConfigPanel extends JPanel {
     private JComboBox<String> shapeComboBox;
     private JButton colorButton;
     private Color roomColor = Color.WHITE;
+    private JColorChooser colorChooser;
+    private String polygonShape = RoomPolygon.POLYGON_PREFIX + " 0,0 6,0 6,4 0,4; 2.5,1.5 3,1.5 3,2 2.5,2";
     private RoomConfigListener listener;
 
     public RoomConfigPanel() {
@@ -175,7 +619,7 @@ class RoomConfigPanel extends JPanel {
         add(heightSpinner);
 
         add(new JLabel("Shape:"));
-        shapeComboBox = new JComboBox<>(new String[]{"Rectangle", "L-Shape", "Square"});
+        shapeComboBox = new JComboBox<>(new String[]{"Rectangle", "L-Shape", "Square", "Polygon"});
         add(shapeComboBox);
 
         add(new JLabel("Wall Color:"));
@@ -188,12 +632,16 @@ class RoomConfigPanel extends JPanel {
         add(applyButton);
     }
 
+    // The chooser is created on first use and kept, as building one is slow.
     private void chooseColor() {
-        Color newColor = JColorChooser.showDialog(this, "Choose Room Color", roomColor);
-        if (newColor != null) {
-            roomColor = newColor;
-            colorButton.setBackground(roomColor);
+        if (colorChooser == null) {
+            colorChooser = new JColorChooser();
         }
+        colorChooser.setColor(roomColor);
+        JColorChooser.createDialog(this, "Choose Room Color", true, colorChooser, e -> {
+            roomColor = colorChooser.getColor();
+            colorButton.setBackground(roomColor);
+        }, null).setVisible(true);
     }
 
     private void applyConfig() {
@@ -201,6 +649,26 @@ class RoomConfigPanel extends JPanel {
             double width = (Double) widthSpinner.getValue();
             double height = (Double) heightSpinner.getValue();
             String shape = (String) shapeComboBox.getSelectedItem();
+            if ("Polygon".equals(shape)) {
+                String text = (String) JOptionPane.showInputDialog(this,
+                        "Outline in metres as x,y points; separate holes with ';'",
+                        "Room Outline", JOptionPane.PLAIN_MESSAGE, null, null, polygonShape);
+                if (text == null) {
+                    return;
+                }
+                RoomPolygon polygon;
+                try {
+                    polygon = RoomPolygon.parse(text.trim());
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, "Invalid outline: " + ex.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                shape = polygonShape = polygon.toShapeString();
+                width = polygon.getMaxX();
+                height = polygon.getMaxY();
+                setRoomDimensions(width, height);
+            }
             listener.onRoomConfigChanged(width, height, shape, roomColor);
         }
     }
@@ -222,55 +690,148 @@ interface RoomConfigListener {
 class FurnitureSelectionPanel extends JPanel {
     private DesignPanel designPanel;
     private static final int ICON_SIZE = 32;
+    private final CatalogListModel listModel = new CatalogListModel();
+    private final JList<CatalogEntry> list;
+    private final JTextField searchField;
+    private CatalogIndex index;
 
     public FurnitureSelectionPanel(DesignPanel designPanel) {
         this.designPanel = designPanel;
         setBorder(BorderFactory.createTitledBorder("Furniture Selection"));
-        setLayout(new GridLayout(0, 2, 5, 5));
+        setLayout(new BorderLayout(5, 5));
+
+        list = new JList<>(listModel);
+        list.setLayoutOrientation(JList.HORIZONTAL_WRAP);
+        list.setVisibleRowCount(-1);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Fixed cell sizes keep JList from measuring every row of a large catalog.
+        list.setFixedCellWidth(110);
+        list.setFixedCellHeight(ICON_SIZE + 28);
+
+        ThumbnailLoader thumbnails = new ThumbnailLoader(ICON_SIZE, icon -> list.repaint());
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            public Component getListCellRendererComponent(JList<?> l, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                super.getListCellRendererComponent(l, value, index, isSelected, cellHasFocus);
+                CatalogEntry entry = (CatalogEntry) value;
+                Image image = thumbnails.get(entry.icon);
+                setIcon(image != null ? new ImageIcon(image) : null);
+                setVerticalTextPosition(SwingConstants.BOTTOM);
+                setHorizontalTextPosition(SwingConstants.CENTER);
+                setHorizontalAlignment(SwingConstants.CENTER);
+                setToolTipText(entry.sku + " - " + entry.name);
+                return this;
+            }
+        });
+        list.addListSelectionListener(e -> {
+            CatalogEntry entry = list.getSelectedValue();
+            if (!e.getValueIsAdjusting() && entry != null) {
+                designPanel.setSelectedFurniture(entry.type);
+                list.clearSelection();
+            }
+        });
+
+        searchField = new JTextField();
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { filter(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { filter(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { filter(); }
+        });
 
-        addFurnitureButton("Chair");
-        addFurnitureButton("Table");
-        addFurnitureButton("Sofa");
-        addFurnitureButton("Bed");
-        addFurnitureButton("Cabinet");
-        addFurnitureButton("Lamp");
+        add(searchField, BorderLayout.NORTH);
+        add(new JScrollPane(list, JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED,
+                JScrollPane.HORIZONTAL_SCROLLBAR_NEVER), BorderLayout.CENTER);
+        loadCatalog();
     }
 
-    private void addFurnitureButton(String name) {
-        try {
-            ImageIcon originalIcon = new ImageIcon(getClass().getResource("/" + name.toLowerCase() + ".png"));
-            Image scaledImage = originalIcon.getImage().getScaledInstance(ICON_SIZE, ICON_SIZE, Image.SCALE_SMOOTH);
-            ImageIcon scaledIcon = new ImageIcon(scaledImage);
-            
-            JButton button = new JButton(name, scaledIcon);
-            button.setVerticalTextPosition(SwingConstants.BOTTOM);
-            button.setHorizontalTextPosition(SwingConstants.CENTER);
-            button.addActionListener(event -> designPanel.setSelectedFurniture(name));
-            add(button);
-        } catch (Exception ex) {
-            JButton button = new JButton(name);
-            button.addActionListener(event -> designPanel.setSelectedFurniture(name));
-            add(button);
+    // Parses the manifest and builds the search index in the background. Rows
+    // appear once the manifest is parsed and stay unfiltered until the index
+    // is ready, so neither a large catalog nor the first search stalls the EDT.
+    private void loadCatalog() {
+        new SwingWorker<CatalogIndex, Void>() {
+            protected CatalogIndex doInBackground() {
+                Catalog catalog = Catalog.loadDefault();
+                SwingUtilities.invokeLater(() -> listModel.setCatalog(catalog));
+                return catalog.getIndex();
+            }
+
+            protected void done() {
+                try {
+                    index = get();
+                    filter();
+                } catch (InterruptedException | java.util.concurrent.ExecutionException ex) {
+                    System.err.println("Could not index catalog: " + ex.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void filter() {
+        if (index == null) {
+            return;
         }
+        listModel.setFilter(index.search(searchField.getText()));
+        list.ensureIndexIsVisible(0);
     }
 }
 
-class DesignPanel extends JPanel implements RoomConfigListener {
-    private double roomWidth = 5.0;
-    private double roomHeight = 3.0;
-    private String roomShape = "Rectangle";
-    private Color roomColor = Color.WHITE;
+/** List model over a filtered view of the catalog, held as an index array. */
+class CatalogListModel extends AbstractListModel<CatalogEntry> {
+    private Catalog catalog = new Catalog();
+    private int[] rows;
+
+    /** Shows every entry of a newly loaded catalog. */
+    public void setCatalog(Catalog catalog) {
+        int oldSize = getSize();
+        this.catalog = catalog;
+        this.rows = null;
+        fireChanged(oldSize);
+    }
+
+    public void setFilter(int[] rows) {
+        int oldSize = getSize();
+        this.rows = rows;
+        fireChanged(oldSize);
+    }
+
+    private void fireChanged(int oldSize) {
+        if (oldSize > 0) {
+            fireIntervalRemoved(this, 0, oldSize - 1);
+        }
+        if (getSize() > 0) {
+            fireIntervalAdded(this, 0, getSize() - 1);
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return rows == null ? catalog.size() : rows.length;
+    }
+
+    @Override
+    public CatalogEntry getElementAt(int index) {
+        return catalog.get(rows == null ? index : rows[index]);
+    }
+}
+
+class DesignPanel extends JPanel implements RoomConfigListener, DesignModelListener, ClearanceListener {
+    private final DesignModel model = new DesignModel();
     private String selectedFurnitureType = null;
-    private ArrayList<FurnitureItem> furnitureItems = new ArrayList<>();
-    private Point dragStart = null;
+    private Point grabOffset = null;
     private FurnitureItem selectedItem = null;
     private FurnitureItem draggedItem = null;
     private ArrayList<SelectionListener> selectionListeners = new ArrayList<>();
     private boolean addingFurniture = false;
+    private DesignDiff diffOverlay = null;
+    private ClearanceAnalyzer clearanceOverlay = null;
+    private ClearanceSpot highlightedSpot = null;
+    private TraceRecorder traceRecorder = null;
 
     public DesignPanel() {
         setBorder(BorderFactory.createLineBorder(Color.BLACK));
         setBackground(Color.LIGHT_GRAY);
+        model.confineTo(SwingUtilities::invokeLater, SwingUtilities::isEventDispatchThread);
+        model.addListener(this);
 
         addMouseListener(new MouseAdapter() {
             public void mousePressed(MouseEvent e) {
@@ -279,23 +840,18 @@ class DesignPanel extends JPanel implements RoomConfigListener {
                     if (addingFurniture) {
                         FurnitureItem item = new FurnitureItem(selectedFurnitureType,
                                 e.getX(), e.getY(), 80, 60);
-                        furnitureItems.add(item);
+                        model.add(item);
                         setSelectedItem(item);
                         draggedItem = item;
-                        dragStart = e.getPoint();
+                        grabOffset = new Point(0, 0);
                         addingFurniture = false;
-                        repaint();
                     } else {
-                        for (int i = furnitureItems.size() - 1; i >= 0; i--) {
-                            FurnitureItem item = furnitureItems.get(i);
-                            if (item.contains(e.getPoint())) {
-                                setSelectedItem(item);
-                                draggedItem = item;
-                                dragStart = e.getPoint();
-                                furnitureItems.remove(i);
-                                furnitureItems.add(item);
-                                break;
-                            }
+                        FurnitureItem item = model.itemAt(e.getPoint());
+                        if (item != null) {
+                            setSelectedItem(item);
+                            draggedItem = item;
+                            grabOffset = new Point(e.getX() - item.getX(), e.getY() - item.getY());
+                            model.bringToFront(item);
                         }
                         if (draggedItem == null) {
                             setSelectedItem(null);
@@ -311,22 +867,21 @@ class DesignPanel extends JPanel implements RoomConfigListener {
                     int gridSize = 10;
                     int newX = (draggedItem.getX() / gridSize) * gridSize;
                     int newY = (draggedItem.getY() / gridSize) * gridSize;
-                    draggedItem.setPosition(newX, newY);
+                    Rectangle bounds = draggedItem.getBounds();
+                    int dx = newX - draggedItem.getX(), dy = newY - draggedItem.getY();
+                    if (sweepFits(bounds, 0, 0, dx, dy) || !fitsRoom(bounds, 0, 0)) {
+                        model.setPosition(draggedItem, newX, newY);
+                    }
                     draggedItem = null;
-                    repaint();
                 }
-                dragStart = null;
+                grabOffset = null;
             }
         });
 
         addMouseMotionListener(new MouseAdapter() {
             public void mouseDragged(MouseEvent e) {
-                if (draggedItem != null && dragStart != null) {
-                    int dx = e.getX() - dragStart.x;
-                    int dy = e.getY() - dragStart.y;
-                    draggedItem.move(dx, dy);
-                    dragStart = e.getPoint();
-                    repaint();
+                if (draggedItem != null && grabOffset != null) {
+                    moveWithinRoom(draggedItem, e.getX() - grabOffset.x, e.getY() - grabOffset.y);
                 }
             }
         });
@@ -347,64 +902,102 @@ class DesignPanel extends JPanel implements RoomConfigListener {
         });
     }
 
+    public DesignModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void designChanged(DesignChange change) {
+        switch (change.kind) {
+            case ITEM_ADDED:
+                repaintItem(change.item.getBounds());
+                break;
+            case ITEM_MOVED:
+            case ITEM_TRANSFORMED:
+                repaintItem(change.previousBounds);
+                repaintItem(change.item.getBounds());
+                break;
+            case ITEM_REMOVED:
+                if (change.item == selectedItem) {
+                    setSelectedItem(null);
+                }
+                if (change.item == draggedItem) {
+                    draggedItem = null;
+                }
+                repaintItem(change.previousBounds);
+                break;
+            default:
+                if (selectedItem != null && !model.getItems().contains(selectedItem)) {
+                    setSelectedItem(null);
+                }
+                draggedItem = null;
+                repaint();
+        }
+    }
+
+    // Room for the selection outline drawn around the item.
+    private void repaintItem(Rectangle bounds) {
+        if (diffOverlay != null) {
+            // Overlay lines can reach anywhere in the panel.
+            repaint();
+            return;
+        }
+        repaint(bounds.x - 4, bounds.y - 4, bounds.width + 8, bounds.height + 8);
+    }
+
     public void clearDesign() {
-        furnitureItems.clear();
+        model.clear();
         setSelectedItem(null);
-        repaint();
     }
 
     public void rotateSelectedFurniture() {
         if (selectedItem != null) {
-            selectedItem.rotate(90);
-            repaint();
+            if (traceRecorder != null) {
+                traceRecorder.rotated();
+            }
+            model.rotate(selectedItem, 90);
         }
     }
 
     public void resizeSelectedFurniture(double scaleFactor) {
         if (selectedItem != null) {
-            selectedItem.resize(scaleFactor);
-            repaint();
+            if (traceRecorder != null) {
+                traceRecorder.resized(scaleFactor);
+            }
+            model.resize(selectedItem, scaleFactor);
         }
     }
 
     private void showContextMenu(int x, int y) {
-        for (int i = furnitureItems.size() - 1; i >= 0; i--) {
-            FurnitureItem item = furnitureItems.get(i);
-            if (item.contains(new Point(x, y))) {
-                setSelectedItem(item);
-
-                JPopupMenu popupMenu = new JPopupMenu();
-                
-                JMenuItem rotateItem = new JMenuItem("Rotate 90°");
-                rotateItem.addActionListener(e -> {
-                    item.rotate(90);
-                    repaint();
-                });
-                
-                JMenuItem increaseSizeItem = new JMenuItem("Increase Size");
-                increaseSizeItem.addActionListener(e -> {
-                    item.resize(1.1);
-                    repaint();
-                });
-                
-                JMenuItem decreaseSizeItem = new JMenuItem("Decrease Size");
-                decreaseSizeItem.addActionListener(e -> {
-                    item.resize(0.9);
-                    repaint();
-                });
-                
-                JMenuItem deleteItem = new JMenuItem("Delete");
-                deleteItem.addActionListener(e -> deleteSelectedFurniture());
-                
-                popupMenu.add(rotateItem);
-                popupMenu.add(increaseSizeItem);
-                popupMenu.add(decreaseSizeItem);
-                popupMenu.addSeparator();
-                popupMenu.add(deleteItem);
+        FurnitureItem item = model.itemAt(new Point(x, y));
+        if (item != null) {
+            setSelectedItem(item);
 
+            JPopupMenu popupMenu = new JPopupMenu();
+            
+            JMenuItem rotateItem = new JMenuItem("Rotate 90°");
+            rotateItem.addActionListener(e -> rotateSelectedFurniture());
+            
+            JMenuItem increaseSizeItem = new JMenuItem("Increase Size");
+            increaseSizeItem.addActionListener(e -> resizeSelectedFurniture(1.1));
+            
+            JMenuItem decreaseSizeItem = new JMenuItem("Decrease Size");
+            decreaseSizeItem.addActionListener(e -> resizeSelectedFurniture(0.9));
+            
+            JMenuItem deleteItem = new JMenuItem("Delete");
+            deleteItem.addActionListener(e -> deleteSelectedFurniture());
+            
+            popupMenu.add(rotateItem);
+            popupMenu.add(increaseSizeItem);
+            popupMenu.add(decreaseSizeItem);
+            popupMenu.addSeparator();
+            popupMenu.add(deleteItem);
+
+            // Not showing when a trace is replayed without a window.
+            if (isShowing()) {
                 popupMenu.show(this, x, y);
-                return;
             }
+            return;
         }
         setSelectedItem(null);
     }
@@ -414,14 +1007,23 @@ class DesignPanel extends JPanel implements RoomConfigListener {
     }
 
     private void setSelectedItem(FurnitureItem item) {
+        FurnitureItem previous = this.selectedItem;
         this.selectedItem = item;
         for (SelectionListener listener : selectionListeners) {
             listener.onSelectionChanged(item);
         }
-        repaint();
+        if (previous != null) {
+            repaintItem(previous.getBounds());
+        }
+        if (item != null) {
+            repaintItem(item.getBounds());
+        }
     }
 
     public void setSelectedFurniture(String type) {
+        if (traceRecorder != null) {
+            traceRecorder.placing(type);
+        }
         this.selectedFurnitureType = type;
         addingFurniture = true;
         setSelectedItem(null);
@@ -434,13 +1036,41 @@ class DesignPanel extends JPanel implements RoomConfigListener {
                     "Confirm Delete", JOptionPane.YES_NO_OPTION);
 
             if (confirm == JOptionPane.YES_OPTION) {
-                furnitureItems.remove(selectedItem);
-                setSelectedItem(null);
-                repaint();
+                removeSelectedFurniture();
+            }
+        }
+    }
+
+    // Deletes without asking, e.g. when replaying a delete confirmed in a trace.
+    void removeSelectedFurniture() {
+        if (selectedItem != null) {
+            if (traceRecorder != null) {
+                traceRecorder.deleted();
             }
+            model.remove(selectedItem);
         }
     }
 
+    FurnitureItem getSelectedItem() {
+        return selectedItem;
+    }
+
+    /** The catalogue item the next click places, or null. */
+    String getPlacingType() {
+        return addingFurniture ? selectedFurnitureType : null;
+    }
+
+    // Puts back the selection a trace was recorded with.
+    void restoreInteraction(long selectedId, String placingType) {
+        selectedFurnitureType = placingType;
+        addingFurniture = placingType != null;
+        setSelectedItem(selectedId != 0 ? model.findById(selectedId) : null);
+    }
+
+    void setTraceRecorder(TraceRecorder recorder) {
+        traceRecorder = recorder;
+    }
+
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
@@ -448,130 +1078,328 @@ class DesignPanel extends JPanel implements RoomConfigListener {
 
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        int baseX = 50;
-        int baseY = 50;
-        int widthPixels = getRoomWidthPixels();
-        int heightPixels = getRoomHeightPixels();
-        
-        g2d.setColor(roomColor);
-        
-        switch (roomShape) {
-            case "Rectangle":
-                g2d.fillRect(baseX, baseY, widthPixels, heightPixels);
-                g2d.setColor(Color.BLACK);
-                g2d.drawRect(baseX, baseY, widthPixels, heightPixels);
-                drawGrid(g2d, baseX, baseY, widthPixels, heightPixels);
-                break;
-                
-            case "L-Shape":
-                int mainWidth = widthPixels;
-                int mainHeight = heightPixels/2;
-                g2d.fillRect(baseX, baseY, mainWidth, mainHeight);
-                
-                int extensionWidth = widthPixels/2;
-                int extensionHeight = heightPixels/2;
-                g2d.fillRect(baseX, baseY + mainHeight, extensionWidth, extensionHeight);
-                
-                g2d.setColor(Color.BLACK);
-                g2d.drawRect(baseX, baseY, mainWidth, mainHeight);
-                g2d.drawRect(baseX, baseY + mainHeight, extensionWidth, extensionHeight);
-                g2d.drawLine(baseX + extensionWidth, baseY + mainHeight, 
-                             baseX + mainWidth, baseY + mainHeight);
-                
-                drawLShapeGrid(g2d, baseX, baseY, widthPixels, heightPixels);
-                break;
-                
-            case "Square":
-                int size = Math.min(widthPixels, heightPixels);
-                g2d.fillRect(baseX, baseY, size, size);
-                g2d.setColor(Color.BLACK);
-                g2d.drawRect(baseX, baseY, size, size);
-                drawGrid(g2d, baseX, baseY, size, size);
-                break;
+        RoomPolygon polygon = model.getRoomPolygon();
+        Shape floor = polygon.toPath(PreviewScene.ROOM_ORIGIN, PreviewScene.ROOM_ORIGIN, PreviewScene.PIXELS_PER_METRE);
+        g2d.setColor(model.getRoomColor());
+        g2d.fill(floor);
+        Shape oldClip = g2d.getClip();
+        g2d.clip(floor);
+        drawGrid(g2d, floor.getBounds());
+        g2d.setClip(oldClip);
+        g2d.setColor(Color.BLACK);
+        g2d.draw(floor);
+        if (clearanceOverlay != null) {
+            drawClearanceOverlay(g2d);
+        }
+
+        Rectangle clip = g2d.getClipBounds();
+        for (FurnitureItem item : model.getItems()) {
+            if (clip == null || clip.intersects(item.getBounds())) {
+                item.draw(g2d, item == selectedItem);
+            }
         }
 
-        for (FurnitureItem item : furnitureItems) {
-            item.draw(g2d, item == selectedItem);
+        if (diffOverlay != null) {
+            drawDiffOverlay(g2d, clip);
         }
 
         g2d.setColor(Color.BLACK);
-        g2d.drawString(String.format("%.1fm x %.1fm (%s)", roomWidth, roomHeight, roomShape),
-                60, 70);
+        g2d.drawString(String.format("%.1fm x %.1fm (%s, %.1f m²)", polygon.getMaxX(), polygon.getMaxY(),
+                polygon.getLabel(), polygon.getArea()), 60, 70);
 
         g2d.drawString("Right-click furniture for options", 60, getHeight() - 30);
         g2d.drawString("Use +/- to resize, R to rotate", 60, getHeight() - 15);
     }
 
-    private void drawGrid(Graphics2D g2d, int x, int y, int width, int height) {
+    /**
+     * Shows a comparison on top of the design: removed pieces as dashed red
+     * outlines, added ones in green, and moved pieces as a blue ghost at the
+     * old position joined to the current one. Rotated or resized pieces are
+     * outlined in orange.
+     */
+    public void setDiffOverlay(DesignDiff diff) {
+        this.diffOverlay = diff;
+        repaint();
+    }
+
+    private void drawDiffOverlay(Graphics2D g2d, Rectangle clip) {
+        Stroke oldStroke = g2d.getStroke();
+        Stroke solid = new BasicStroke(2);
+        Stroke dashed = new BasicStroke(2, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10, new float[]{6, 4}, 0);
+        for (DesignDiff.Entry entry : diffOverlay.getEntries()) {
+            Rectangle area = entry.before != null ? entry.before.getBounds() : entry.after.getBounds();
+            if (entry.before != null && entry.after != null) {
+                area = area.union(entry.after.getBounds());
+            }
+            if (clip != null && !clip.intersects(area)) {
+                continue;
+            }
+            if (entry.has(DesignDiff.REMOVED)) {
+                g2d.setColor(Color.RED);
+                g2d.setStroke(dashed);
+                g2d.draw(entry.before.getOutline());
+            } else if (entry.has(DesignDiff.ADDED)) {
+                g2d.setColor(new Color(0, 160, 0));
+                g2d.setStroke(solid);
+                g2d.draw(entry.after.getOutline());
+            } else {
+                if (entry.has(DesignDiff.MOVED)) {
+                    Rectangle from = entry.before.getBounds(), to = entry.after.getBounds();
+                    g2d.setColor(new Color(0, 0, 255, 60));
+                    g2d.fill(entry.before.getOutline());
+                    g2d.setColor(Color.BLUE);
+                    g2d.setStroke(dashed);
+                    g2d.draw(entry.before.getOutline());
+                    g2d.setStroke(solid);
+                    g2d.drawLine((int) from.getCenterX(), (int) from.getCenterY(), (int) to.getCenterX(), (int) to.getCenterY());
+                }
+                if (entry.has(DesignDiff.ROTATED | DesignDiff.RESIZED)) {
+                    g2d.setColor(Color.ORANGE);
+                    g2d.setStroke(solid);
+                    g2d.draw(entry.after.getOutline());
+                }
+            }
+        }
+        g2d.setStroke(oldStroke);
+        g2d.setColor(Color.BLACK);
+        g2d.drawString(diffOverlay.getSummary(), 60, getHeight() - 45);
+    }
+
+    /** Shows the walkway heatmap from an analyzer, or hides it if null. */
+    public void setClearanceOverlay(ClearanceAnalyzer analyzer) {
+        this.clearanceOverlay = analyzer;
+        this.highlightedSpot = null;
+        repaint();
+    }
+
+    public void highlightClearanceSpot(ClearanceSpot spot) {
+        this.highlightedSpot = spot;
+        repaint();
+    }
+
+    @Override
+    public void clearanceChanged(ClearanceAnalyzer analyzer, Rectangle dirtyPixels) {
+        repaint(dirtyPixels);
+    }
+
+    private void drawClearanceOverlay(Graphics2D g2d) {
+        Rectangle2D.Double bounds = clearanceOverlay.getHeatmapBounds();
+        BufferedImage heatmap = clearanceOverlay.getHeatmap();
+        g2d.drawImage(heatmap, new AffineTransform(bounds.width / heatmap.getWidth(), 0, 0,
+                bounds.height / heatmap.getHeight(), bounds.x, bounds.y), null);
+        if (highlightedSpot != null) {
+            double scale = PreviewScene.PIXELS_PER_METRE;
+            Stroke oldStroke = g2d.getStroke();
+            g2d.setColor(Color.RED);
+            g2d.setStroke(new BasicStroke(2));
+            g2d.draw(new Rectangle2D.Double(PreviewScene.ROOM_ORIGIN + highlightedSpot.area.x * scale - 3,
+                    PreviewScene.ROOM_ORIGIN + highlightedSpot.area.y * scale - 3,
+                    highlightedSpot.area.width * scale + 6, highlightedSpot.area.height * scale + 6));
+            g2d.setStroke(oldStroke);
+        }
+    }
+
+    private void drawGrid(Graphics2D g2d, Rectangle area) {
         g2d.setColor(new Color(200, 200, 200, 100));
         int gridSize = 10;
         
-        for (int i = x; i <= x + width; i += gridSize) {
-            g2d.drawLine(i, y, i, y + height);
+        for (int i = area.x; i <= area.x + area.width; i += gridSize) {
+            g2d.drawLine(i, area.y, i, area.y + area.height);
         }
         
-        for (int j = y; j <= y + height; j += gridSize) {
-            g2d.drawLine(x, j, x + width, j);
+        for (int j = area.y; j <= area.y + area.height; j += gridSize) {
+            g2d.drawLine(area.x, j, area.x + area.width, j);
         }
     }
 
-    private void drawLShapeGrid(Graphics2D g2d, int x, int y, int width, int height) {
-        g2d.setColor(new Color(200, 200, 200, 100));
-        int gridSize = 10;
-        
-        int mainHeight = height/2;
-        for (int i = x; i <= x + width; i += gridSize) {
-            g2d.drawLine(i, y, i, y + mainHeight);
+    /**
+     * Moves an item towards (x, y) without letting it pass through a wall. The
+     * move is swept in steps no longer than the item's smaller side or an
+     * edge grid cell, and each step must fit with everything it sweeps over,
+     * so a fast drag cannot jump a column or the corner of an L-shape. A
+     * blocked step slides along the wall and stops flush against it. Items
+     * that are already outside the floor, e.g. after the room was made
+     * smaller, move freely so they can be brought back in.
+     */
+    private void moveWithinRoom(FurnitureItem item, int x, int y) {
+        int dx = x - item.getX(), dy = y - item.getY();
+        if (dx == 0 && dy == 0) {
+            return;
         }
-        for (int j = y; j <= y + mainHeight; j += gridSize) {
-            g2d.drawLine(x, j, x + width, j);
+        Rectangle bounds = item.getBounds();
+        if (!fitsRoom(bounds, 0, 0)) {
+            model.move(item, dx, dy);
+            return;
         }
-        
-        int extensionWidth = width/2;
-        for (int i = x; i <= x + extensionWidth; i += gridSize) {
-            g2d.drawLine(i, y + mainHeight, i, y + height);
+        int cell = (int) (model.getRoomPolygon().getCellSize() * PreviewScene.PIXELS_PER_METRE);
+        int step = Math.max(1, Math.min(Math.min(bounds.width, bounds.height), cell));
+        int steps = (Math.max(Math.abs(dx), Math.abs(dy)) + step - 1) / step;
+        int fromX = 0, fromY = 0;
+        for (int i = 1; i <= steps; i++) {
+            int toX = (int) ((long) dx * i / steps), toY = (int) ((long) dy * i / steps);
+            if (sweepFits(bounds, fromX, fromY, toX - fromX, toY - fromY)) {
+                fromX = toX;
+                fromY = toY;
+                continue;
+            }
+            int allowedX = furthestFit(bounds, fromX, fromY, toX - fromX, true);
+            int allowedY = furthestFit(bounds, fromX + allowedX, fromY, toY - fromY, false);
+            if (allowedX == 0 && allowedY == 0) {
+                allowedY = furthestFit(bounds, fromX, fromY, toY - fromY, false);
+                allowedX = furthestFit(bounds, fromX, fromY + allowedY, toX - fromX, true);
+            }
+            fromX += allowedX;
+            fromY += allowedY;
+            break;
+        }
+        if (fromX != 0 || fromY != 0) {
+            model.move(item, fromX, fromY);
         }
-        for (int j = y + mainHeight; j <= y + height; j += gridSize) {
-            g2d.drawLine(x, j, x + extensionWidth, j);
+    }
+
+    // Binary search for the longest move along one axis from a fitting offset
+    // whose swept area still fits. The swept area only grows with the move,
+    // so fitting is monotonic even with holes and concave corners.
+    private int furthestFit(Rectangle bounds, int fromX, int fromY, int limit, boolean alongX) {
+        int low = 0, high = Math.abs(limit), sign = Integer.signum(limit);
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            boolean fits = alongX ? sweepFits(bounds, fromX, fromY, sign * mid, 0)
+                    : sweepFits(bounds, fromX, fromY, 0, sign * mid);
+            if (fits) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
         }
+        return sign * low;
     }
 
-    private int getRoomWidthPixels() {
-        return (int) (roomWidth * 50);
+    // Whether the box covering the item at (fromX, fromY) and after a further
+    // (dx, dy), and so everything the item passes over on the way, fits.
+    private boolean sweepFits(Rectangle bounds, int fromX, int fromY, int dx, int dy) {
+        Rectangle swept = new Rectangle(bounds.x + fromX + Math.min(0, dx), bounds.y + fromY + Math.min(0, dy),
+                bounds.width + Math.abs(dx), bounds.height + Math.abs(dy));
+        return fitsRoom(swept, 0, 0);
     }
 
-    private int getRoomHeightPixels() {
-        return (int) (roomHeight * 50);
+    private boolean fitsRoom(Rectangle bounds, int dx, int dy) {
+        double scale = PreviewScene.PIXELS_PER_METRE;
+        return model.getRoomPolygon().containsRect((bounds.x + dx - PreviewScene.ROOM_ORIGIN) / scale,
+                (bounds.y + dy - PreviewScene.ROOM_ORIGIN) / scale, bounds.width / scale, bounds.height / scale);
     }
 
     @Override
     public void onRoomConfigChanged(double width, double height, String shape, Color color) {
-        this.roomWidth = width;
-        this.roomHeight = height;
-        this.roomShape = shape;
-        this.roomColor = color;
-        repaint();
+        model.setRoom(width, height, shape, color);
     }
 
     public DesignData getDesignData() {
-        return new DesignData(roomWidth, roomHeight, roomShape, roomColor,
-                new ArrayList<>(furnitureItems));
+        return model.getDesignData();
     }
 
     public void setDesignData(DesignData data) {
-        this.roomWidth = data.roomWidth;
-        this.roomHeight = data.roomHeight;
-        this.roomShape = data.roomShape;
-        this.roomColor = data.roomColor;
-        this.furnitureItems = new ArrayList<>(data.furnitureItems);
-        
-        // Reload images for all furniture items after loading
-        for (FurnitureItem item : furnitureItems) {
-            item.loadImage();
+        model.setDesignData(data);
+    }
+}
+
+class PreviewPanel3D extends JPanel implements DesignModelListener {
+    private final SoftwareRenderer renderer = new SoftwareRenderer();
+    private final OrbitCamera camera = new OrbitCamera();
+    private DesignModel model;
+    private PreviewScene scene;
+    private Point dragStart = null;
+    private long lastFrameNanos;
+
+    public PreviewPanel3D() {
+        setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        setBackground(Color.LIGHT_GRAY);
+        renderer.setBackground(Color.LIGHT_GRAY);
+
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+        });
+
+        addMouseMotionListener(new MouseAdapter() {
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart != null) {
+                    camera.orbit(-(e.getX() - dragStart.x) * 0.01, (e.getY() - dragStart.y) * 0.01);
+                    dragStart = e.getPoint();
+                    repaint();
+                }
+            }
+        });
+
+        addMouseWheelListener(e -> {
+            camera.zoom(Math.pow(1.1, e.getPreciseWheelRotation()));
+            repaint();
+        });
+    }
+
+    public void setModel(DesignModel model) {
+        if (this.model != null) {
+            this.model.removeListener(this);
         }
-        
+        this.model = model;
+        model.addListener(this);
+        scene = PreviewScene.fromModel(model);
+        resetCamera();
+    }
+
+    private void resetCamera() {
+        camera.setTarget(scene.getCenterX(), 0f, scene.getCenterZ());
+        camera.setDistance(scene.getExtent() * 1.6 + 2);
         repaint();
     }
+
+    @Override
+    public void designChanged(DesignChange change) {
+        switch (change.kind) {
+            case ITEM_ADDED:
+                scene.addItem(change.item);
+                break;
+            case ITEM_MOVED:
+            case ITEM_TRANSFORMED:
+                scene.updateItem(change.item);
+                break;
+            case ITEM_REMOVED:
+                scene.removeItem(change.item);
+                break;
+            case ROOM_CHANGED:
+                scene.setRoom(model.getRoomPolygon(), model.getRoomColor());
+                resetCamera();
+                return;
+            case RESET:
+                scene = PreviewScene.fromModel(model);
+                resetCamera();
+                return;
+        }
+        if (isShowing()) {
+            repaint();
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (scene == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        g.drawImage(renderer.render(scene, camera, getWidth(), getHeight()), 0, 0, null);
+        lastFrameNanos = System.nanoTime() - start;
+
+        g.setColor(Color.BLACK);
+        g.drawString(String.format("%d triangles, %.1f ms", scene.getTriangleCount(), lastFrameNanos / 1_000_000.0),
+                10, 20);
+        g.drawString("Drag to orbit, scroll to zoom", 10, getHeight() - 15);
+    }
 }
 
 interface SelectionListener {
@@ -579,14 +1407,21 @@ interface SelectionListener {
 }
 
 class FurnitureItem implements Serializable {
+    // Pinned to the value computed for the original class so earlier saved designs still load.
+    private static final long serialVersionUID = 6649923338010811970L;
+    private long id;
     private String type;
     private int x, y, width, height;
     private int originalWidth, originalHeight;
     private int rotation = 0;
     private transient Image image;
-    private static final Map<String, Image> imageCache = new HashMap<>();
+    private static final Map<String, Image> imageCache = new java.util.concurrent.ConcurrentHashMap<>();
 
     public FurnitureItem(String type, int x, int y, int width, int height) {
+        this(type, x, y, width, height, true);
+    }
+
+    private FurnitureItem(String type, int x, int y, int width, int height, boolean withImage) {
         this.type = type;
         this.x = x;
         this.y = y;
@@ -594,24 +1429,27 @@ class FurnitureItem implements Serializable {
         this.height = height;
         this.originalWidth = width;
         this.originalHeight = height;
-        loadImage();
+        if (withImage) {
+            loadImage();
+        }
+    }
+
+    /**
+     * An item with no sprite loaded, e.g. a copy that is only saved or
+     * measured, so making it never touches the sprite cache. Geometry changes
+     * leave it without one; {@link #loadImage()} loads it.
+     */
+    static FurnitureItem withoutImage(String type, int originalWidth, int originalHeight) {
+        return new FurnitureItem(type, 0, 0, originalWidth, originalHeight, false);
     }
 
     public void loadImage() {
         if (imageCache.containsKey(type)) {
             image = imageCache.get(type);
         } else {
-            try {
-                String imagePath = "/" + type.toLowerCase() + ".png";
-                ImageIcon icon = new ImageIcon(getClass().getResource(imagePath));
-                if (icon.getImageLoadStatus() == MediaTracker.COMPLETE) {
-                    image = icon.getImage().getScaledInstance(width, height, Image.SCALE_SMOOTH);
-                    imageCache.put(type, image);
-                } else {
-                    image = null;
-                }
-            } catch (Exception e) {
-                image = null;
+            image = SpriteCache.shared().load("/" + type.toLowerCase() + ".png", width, height);
+            if (image != null) {
+                imageCache.put(type, image);
             }
         }
     }
@@ -643,12 +1481,27 @@ class FurnitureItem implements Serializable {
         g2d.setTransform(oldTransform);
     }
 
+    /** Axis-aligned bounds of the rotated footprint, in panel pixels. */
+    public Rectangle getBounds() {
+        Rectangle rect = new Rectangle(x, y, width, height);
+        if (rotation % 180 == 0) {
+            return rect;
+        }
+        AffineTransform transform = new AffineTransform();
+        transform.rotate(Math.toRadians(rotation), x + width/2, y + height/2);
+        return transform.createTransformedShape(rect).getBounds();
+    }
+
     public boolean contains(Point p) {
+        return getOutline().contains(p);
+    }
+
+    /** The rotated footprint, in panel pixels. */
+    public Shape getOutline() {
         Rectangle rect = new Rectangle(x, y, width, height);
         AffineTransform transform = new AffineTransform();
         transform.rotate(Math.toRadians(rotation), x + width/2, y + height/2);
-        Shape rotatedRect = transform.createTransformedShape(rect);
-        return rotatedRect.contains(p);
+        return transform.createTransformedShape(rect);
     }
 
     public void rotate(int degrees) {
@@ -680,8 +1533,21 @@ class FurnitureItem implements Serializable {
         this.y = centerY - height/2;
         
         if (image != null) {
-            ImageIcon icon = new ImageIcon(image);
-            image = icon.getImage().getScaledInstance(width, height, Image.SCALE_SMOOTH);
+            image = SpriteCache.shared().load("/" + type.toLowerCase() + ".png", width, height);
+        }
+    }
+
+    public void setGeometry(int x, int y, int width, int height, int rotation) {
+        // Rotation swaps width and height without rescaling the sprite, as in rotate().
+        boolean resized = (width != this.width || height != this.height)
+                && (width != this.height || height != this.width);
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        if (resized && image != null) {
+            image = SpriteCache.shared().load("/" + type.toLowerCase() + ".png", width, height);
         }
     }
 
@@ -695,6 +1561,14 @@ class FurnitureItem implements Serializable {
         this.y = y;
     }
 
+    public long getId() {
+        return id;
+    }
+
+    void setId(long id) {
+        this.id = id;
+    }
+
     public int getX() {
         return x;
     }
@@ -703,12 +1577,57 @@ class FurnitureItem implements Serializable {
         return y;
     }
 
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    int getOriginalWidth() {
+        return originalWidth;
+    }
+
+    int getOriginalHeight() {
+        return originalHeight;
+    }
+
     public String getType() {
         return type;
     }
+
+    static float[] defaultSize(String type) {
+        switch (type.toLowerCase()) {
+            case "chair": return new float[]{0.5f, 0.8f, 0.5f};
+            case "table": return new float[]{1.2f, 0.7f, 1.2f};
+            case "sofa": return new float[]{1.8f, 0.7f, 0.8f};
+            case "bed": return new float[]{2.0f, 0.5f, 1.5f};
+            case "cabinet": return new float[]{0.8f, 1.5f, 0.5f};
+            case "lamp": return new float[]{0.3f, 1.0f, 0.3f};
+            default: return new float[]{0.5f, 0.5f, 0.5f};
+        }
+    }
+
+    static Color defaultColor(String type) {
+        switch (type.toLowerCase()) {
+            case "chair": return new Color(0.8f, 0.2f, 0.2f);
+            case "table": return new Color(0.6f, 0.4f, 0.2f);
+            case "sofa": return new Color(0.2f, 0.2f, 0.8f);
+            case "bed": return new Color(0.9f, 0.9f, 0.9f);
+            case "cabinet": return new Color(0.5f, 0.3f, 0.1f);
+            case "lamp": return new Color(0.9f, 0.9f, 0.1f);
+            default: return new Color(0.5f, 0.5f, 0.5f);
+        }
+    }
 }
 
 class DesignData implements Serializable {
+    private static final long serialVersionUID = 7971300065151298823L;
     double roomWidth;
     double roomHeight;
     String roomShape;
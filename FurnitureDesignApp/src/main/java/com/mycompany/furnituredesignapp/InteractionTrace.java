@@ -0,0 +1,365 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.zip.*;
+
+/**
+ * A recorded editing session: the design, panel size and selection when
+ * recording started, then every mouse press, drag and release on the
+ * {@link DesignPanel} with its timestamp, plus the commands that reach the
+ * panel some other way (placing a catalogue item, rotate, resize and delete,
+ * whether from a key, a button or the context menu) and room or whole-design
+ * changes. Key presses are recorded as the commands they trigger, and a
+ * delete only once confirmed, so a replay never opens a dialog.
+ *
+ * <p>The file is gzipped. Events are a kind byte, the milliseconds since the
+ * previous event and mouse positions relative to the previous one, all as
+ * variable-length integers, so a drag step takes a few bytes.
+ */
+class InteractionTrace {
+    private static final int MAGIC = 0x46445452;
+    private static final int VERSION = 1;
+
+    enum Kind { PRESS, RELEASE, DRAG, PLACE, ROTATE, RESIZE, DELETE, ROOM, DESIGN, PANEL_SIZE, END }
+
+    /** One recorded event; which fields are set depends on the kind. */
+    static class Event {
+        final Kind kind;
+        final long time;
+        int x, y, modifiers, button, clickCount;
+        double factor;
+        String text;
+        double width, height;
+        Color color;
+        DesignData design;
+
+        Event(Kind kind, long time) {
+            this.kind = kind;
+            this.time = time;
+        }
+    }
+
+    final int panelWidth;
+    final int panelHeight;
+    final long selectedId;
+    final String placingType;
+    final DesignData design;
+    final java.util.List<Event> events;
+
+    private InteractionTrace(int panelWidth, int panelHeight, long selectedId, String placingType,
+            DesignData design, java.util.List<Event> events) {
+        this.panelWidth = panelWidth;
+        this.panelHeight = panelHeight;
+        this.selectedId = selectedId;
+        this.placingType = placingType;
+        this.design = design;
+        this.events = events;
+    }
+
+    /** Milliseconds from the start of recording to the last event. */
+    public long getDuration() {
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).time;
+    }
+
+    public static InteractionTrace read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException(file.getName() + " is not an interaction trace");
+            }
+            int width = readVarint(in), height = readVarint(in);
+            long selectedId = CollabOp.readVarLong(in);
+            String placingType = in.readBoolean() ? in.readUTF() : null;
+            DesignData design = readDesign(in);
+            ArrayList<Event> events = new ArrayList<>();
+            long time = 0;
+            int x = 0, y = 0;
+            Kind[] kinds = Kind.values();
+            while (true) {
+                int code = in.readUnsignedByte();
+                if (code >= kinds.length) {
+                    throw new IOException("Unknown trace event " + code);
+                }
+                Kind kind = kinds[code];
+                if (kind == Kind.END) {
+                    break;
+                }
+                time += CollabOp.readVarLong(in);
+                Event event = new Event(kind, time);
+                switch (kind) {
+                    case PRESS:
+                    case RELEASE:
+                    case DRAG:
+                        x += CollabOp.unZigZag(readVarint(in));
+                        y += CollabOp.unZigZag(readVarint(in));
+                        event.x = x;
+                        event.y = y;
+                        event.modifiers = readVarint(in);
+                        event.button = in.readUnsignedByte();
+                        event.clickCount = readVarint(in);
+                        break;
+                    case PLACE:
+                        event.text = in.readUTF();
+                        break;
+                    case RESIZE:
+                        event.factor = in.readDouble();
+                        break;
+                    case ROOM:
+                        event.width = in.readDouble();
+                        event.height = in.readDouble();
+                        event.text = in.readUTF();
+                        event.color = new Color(in.readInt(), true);
+                        break;
+                    case DESIGN:
+                        event.design = readDesign(in);
+                        break;
+                    case PANEL_SIZE:
+                        event.x = readVarint(in);
+                        event.y = readVarint(in);
+                        break;
+                    default:
+                        break;
+                }
+                events.add(event);
+            }
+            return new InteractionTrace(width, height, selectedId, placingType, design, events);
+        }
+    }
+
+    private static DesignData readDesign(DataInputStream in) throws IOException {
+        int length = readVarint(in);
+        if (length < 0) {
+            throw new IOException("Malformed trace: design of " + (length & 0xFFFFFFFFL) + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (DesignData) ois.readObject();
+        } catch (ClassNotFoundException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    // Varints as in the collaboration protocol, holding 32 bits; anything longer is corrupt.
+    private static int readVarint(DataInputStream in) throws IOException {
+        long value = CollabOp.readVarLong(in);
+        if (value < 0 || value > 0xFFFFFFFFL) {
+            throw new IOException("Malformed trace: " + value + " is out of range");
+        }
+        return (int) value;
+    }
+
+    static void writeHeader(DataOutputStream out, int width, int height, long selectedId, String placingType,
+            DesignData design) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        CollabOp.writeVarLong(out, width);
+        CollabOp.writeVarLong(out, height);
+        CollabOp.writeVarLong(out, selectedId);
+        out.writeBoolean(placingType != null);
+        if (placingType != null) {
+            out.writeUTF(placingType);
+        }
+        writeDesign(out, design);
+    }
+
+    static void writeDesign(DataOutputStream out, DesignData design) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(design);
+        }
+        CollabOp.writeVarLong(out, bytes.size());
+        bytes.writeTo(out);
+    }
+}
+
+/**
+ * Records what happens in a {@link DesignPanel} to an {@link InteractionTrace}
+ * file until stopped. Mouse events carry the time the system gave them, so a
+ * slow handler does not hide in the recorded pauses; other events take the
+ * time they are recorded. Must be used on the event thread.
+ */
+class TraceRecorder extends MouseAdapter implements DesignModelListener, ComponentListener {
+    private final DesignPanel panel;
+    private final DataOutputStream out;
+    private final LongSupplier clock;
+    private final long start;
+    private long last;
+    private int lastX, lastY;
+    private IOException failure;
+    private long eventCount;
+
+    private TraceRecorder(DesignPanel panel, OutputStream stream, LongSupplier clock) throws IOException {
+        this.panel = panel;
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(stream)));
+        this.clock = clock;
+        this.start = clock.getAsLong();
+        this.last = start;
+        FurnitureItem selected = panel.getSelectedItem();
+        InteractionTrace.writeHeader(out, panel.getWidth(), panel.getHeight(), selected != null ? selected.getId() : 0,
+                panel.getPlacingType(), panel.getDesignData());
+    }
+
+    /** Starts recording the panel to the file. */
+    public static TraceRecorder start(DesignPanel panel, File file) throws IOException {
+        return start(panel, new FileOutputStream(file), System::currentTimeMillis);
+    }
+
+    /** Starts recording with the given millisecond clock, which mouse event times must also come from. */
+    static TraceRecorder start(DesignPanel panel, OutputStream stream, LongSupplier clock) throws IOException {
+        TraceRecorder recorder = new TraceRecorder(panel, stream, clock);
+        panel.addMouseListener(recorder);
+        panel.addMouseMotionListener(recorder);
+        panel.addComponentListener(recorder);
+        panel.getModel().addListener(recorder);
+        panel.setTraceRecorder(recorder);
+        return recorder;
+    }
+
+    /** Stops recording and closes the file; throws if any event could not be written. */
+    public void stop() throws IOException {
+        panel.removeMouseListener(this);
+        panel.removeMouseMotionListener(this);
+        panel.removeComponentListener(this);
+        panel.getModel().removeListener(this);
+        panel.setTraceRecorder(null);
+        try {
+            if (failure == null) {
+                out.writeByte(InteractionTrace.Kind.END.ordinal());
+            }
+        } finally {
+            out.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    @Override
+    public void mousePressed(MouseEvent e) {
+        mouse(InteractionTrace.Kind.PRESS, e);
+    }
+
+    @Override
+    public void mouseReleased(MouseEvent e) {
+        mouse(InteractionTrace.Kind.RELEASE, e);
+    }
+
+    @Override
+    public void mouseDragged(MouseEvent e) {
+        mouse(InteractionTrace.Kind.DRAG, e);
+    }
+
+    private void mouse(InteractionTrace.Kind kind, MouseEvent e) {
+        try {
+            begin(kind, e.getWhen());
+            CollabOp.writeVarLong(out, CollabOp.zigZag(e.getX() - lastX));
+            CollabOp.writeVarLong(out, CollabOp.zigZag(e.getY() - lastY));
+            CollabOp.writeVarLong(out, e.getModifiersEx() & 0xFFFFFFFFL);
+            out.writeByte(e.getButton());
+            CollabOp.writeVarLong(out, e.getClickCount());
+            lastX = e.getX();
+            lastY = e.getY();
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    void placing(String type) {
+        try {
+            begin(InteractionTrace.Kind.PLACE, clock.getAsLong());
+            out.writeUTF(type);
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    void rotated() {
+        command(InteractionTrace.Kind.ROTATE);
+    }
+
+    void resized(double factor) {
+        try {
+            begin(InteractionTrace.Kind.RESIZE, clock.getAsLong());
+            out.writeDouble(factor);
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    void deleted() {
+        command(InteractionTrace.Kind.DELETE);
+    }
+
+    private void command(InteractionTrace.Kind kind) {
+        try {
+            begin(kind, clock.getAsLong());
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    // Item edits are replayed from the input that made them; only changes
+    // from outside the panel, such as the room settings or a loaded design,
+    // are recorded as they are.
+    @Override
+    public void designChanged(DesignChange change) {
+        DesignModel model = panel.getModel();
+        try {
+            if (change.kind == DesignChange.Kind.ROOM_CHANGED) {
+                begin(InteractionTrace.Kind.ROOM, clock.getAsLong());
+                out.writeDouble(model.getRoomWidth());
+                out.writeDouble(model.getRoomHeight());
+                out.writeUTF(model.getRoomShape());
+                out.writeInt(model.getRoomColor().getRGB());
+            } else if (change.kind == DesignChange.Kind.RESET) {
+                begin(InteractionTrace.Kind.DESIGN, clock.getAsLong());
+                InteractionTrace.writeDesign(out, model.getDesignData());
+            }
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    @Override
+    public void componentResized(ComponentEvent e) {
+        try {
+            begin(InteractionTrace.Kind.PANEL_SIZE, clock.getAsLong());
+            CollabOp.writeVarLong(out, panel.getWidth());
+            CollabOp.writeVarLong(out, panel.getHeight());
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    public void componentMoved(ComponentEvent e) {}
+    public void componentShown(ComponentEvent e) {}
+    public void componentHidden(ComponentEvent e) {}
+
+    private void begin(InteractionTrace.Kind kind, long time) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        // Event times are not strictly ordered across sources; never go back.
+        long at = Math.max(last, time);
+        out.writeByte(kind.ordinal());
+        CollabOp.writeVarLong(out, at - last);
+        last = at;
+        eventCount++;
+    }
+
+    // Recording must not break editing: keep the first error for stop().
+    private void failed(IOException ex) {
+        if (failure == null) {
+            failure = ex;
+        }
+    }
+}
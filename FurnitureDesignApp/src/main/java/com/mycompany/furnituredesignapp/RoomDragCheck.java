@@ -0,0 +1,75 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+
+/**
+ * Drags furniture in a {@link DesignPanel} with single long mouse moves, as a
+ * fast drag delivers them, and checks that walls stop it: a column in the
+ * way, the inner corner of an L-shape, and open floor where the item must
+ * arrive exactly. Exits with status 1 if any case fails.
+ *
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.RoomDragCheck
+ * </pre>
+ */
+class RoomDragCheck {
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        SwingUtilities.invokeAndWait(() -> {
+            // A 0.4 m column from x = 4 m; the item starts left of it and is dragged past it.
+            Rectangle column = drag("Polygon: 0,0 8,0 8,4 0,4; 4,1 4.4,1 4.4,3 4,3", 150, 140, 200, 0);
+            check("fast drag across a column", column.x + column.width <= pixels(4), column);
+            check("stops flush against the column", column.x + column.width == pixels(4), column);
+
+            // From the lower arm of an L-shape diagonally to the upper right, through the missing corner.
+            Rectangle corner = drag("L-Shape", 200, 275, 125, -150);
+            check("fast drag across an L-shape's corner", corner.x + corner.width <= pixels(4), corner);
+
+            Rectangle open = drag("Rectangle", 100, 100, 300, 50);
+            check("fast drag across open floor", open.x == 400 && open.y == 150, open);
+        });
+        System.out.println(failures == 0 ? "all drags stayed inside the walls" : failures + " failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static int pixels(double metres) {
+        return (int) (PreviewScene.ROOM_ORIGIN + metres * PreviewScene.PIXELS_PER_METRE);
+    }
+
+    // Places a 40 px item at (x, y), drags it by (dx, dy) in one motion event, releases it
+    // and returns where it ended up.
+    private static Rectangle drag(String shape, int x, int y, int dx, int dy) {
+        DesignPanel panel = new DesignPanel();
+        panel.setSize(600, 400);
+        panel.onRoomConfigChanged(8, 6, shape, Color.WHITE);
+        FurnitureItem item = new FurnitureItem("Chair", x, y, 40, 40);
+        panel.getModel().add(item);
+        mouse(panel, MouseEvent.MOUSE_PRESSED, x + 20, y + 20);
+        mouse(panel, MouseEvent.MOUSE_DRAGGED, x + 20 + dx, y + 20 + dy);
+        mouse(panel, MouseEvent.MOUSE_RELEASED, x + 20 + dx, y + 20 + dy);
+        Rectangle bounds = item.getBounds();
+        double scale = PreviewScene.PIXELS_PER_METRE;
+        check("ends inside the floor", panel.getModel().getRoomPolygon().containsRect(
+                (bounds.x - PreviewScene.ROOM_ORIGIN) / scale, (bounds.y - PreviewScene.ROOM_ORIGIN) / scale,
+                bounds.width / scale, bounds.height / scale), bounds);
+        return bounds;
+    }
+
+    private static void mouse(DesignPanel panel, int id, int x, int y) {
+        int modifiers = id == MouseEvent.MOUSE_RELEASED ? 0 : InputEvent.BUTTON1_DOWN_MASK;
+        panel.dispatchEvent(new MouseEvent(panel, id, System.currentTimeMillis(), modifiers, x, y, 1, false,
+                MouseEvent.BUTTON1));
+    }
+
+    private static void check(String label, boolean passed, Rectangle bounds) {
+        System.out.printf("%-40s %s  item at %d,%d %dx%d%n", label, passed ? "ok  " : "FAIL", bounds.x, bounds.y,
+                bounds.width, bounds.height);
+        if (!passed) {
+            failures++;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.geom.*;
+import java.util.*;
+
+/**
+ * Floor outline of a room in metres, with the room's corner at the origin:
+ * an outer ring and any number of holes (columns, shafts). Rooms store their
+ * shape as a string, so the built-in "Rectangle", "L-Shape" and "Square"
+ * keep working and custom outlines are written as
+ * <pre>
+ * Polygon: 0,0 6,0 6,4 0,4; 2.5,1.5 3,1.5 3,2 2.5,2
+ * </pre>
+ * where the first ring is the outline and each further ring is a hole.
+ *
+ * <p>Containment tests go through an edge grid built once per outline: each
+ * cell lists the edges that cross it and knows whether a reference point in
+ * it is inside. A point test then only looks at the edges of its own cell,
+ * and a rectangle test at the cells the rectangle covers, so the cost of
+ * keeping furniture inside the walls does not grow with the number of walls.
+ */
+final class RoomPolygon {
+    static final String POLYGON_PREFIX = "Polygon:";
+    // Reference point within each cell, kept off round numbers so it does not
+    // land on walls drawn on a regular spacing.
+    private static final double REFERENCE = 0.4997;
+
+    private final double[][] rings;
+    private final String label;
+    private final double minX, minY, maxX, maxY;
+    private final double area;
+
+    // Edge list: x0, y0, x1, y1 per edge.
+    private final double[] edges;
+    private final int columns, rows;
+    private final double cellWidth, cellHeight;
+    private final int[][] cellEdges;
+    private final boolean[] referenceInside;
+
+    private RoomPolygon(double[][] rings, String label) {
+        this.rings = rings;
+        this.label = label;
+        double x0 = Double.MAX_VALUE, y0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+        int edgeCount = 0;
+        double signedArea = 0;
+        for (int r = 0; r < rings.length; r++) {
+            double[] ring = rings[r];
+            double ringArea = 0;
+            for (int i = 0; i < ring.length; i += 2) {
+                x0 = Math.min(x0, ring[i]);
+                y0 = Math.min(y0, ring[i + 1]);
+                x1 = Math.max(x1, ring[i]);
+                y1 = Math.max(y1, ring[i + 1]);
+                int j = (i + 2) % ring.length;
+                ringArea += ring[i] * ring[j + 1] - ring[j] * ring[i + 1];
+            }
+            signedArea += r == 0 ? Math.abs(ringArea) / 2 : -Math.abs(ringArea) / 2;
+            edgeCount += ring.length / 2;
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+        area = Math.max(0, signedArea);
+
+        edges = new double[edgeCount * 4];
+        int e = 0;
+        for (double[] ring : rings) {
+            for (int i = 0; i < ring.length; i += 2) {
+                int j = (i + 2) % ring.length;
+                edges[e++] = ring[i];
+                edges[e++] = ring[i + 1];
+                edges[e++] = ring[j];
+                edges[e++] = ring[j + 1];
+            }
+        }
+
+        int cells = Math.max(4, Math.min(128, 2 * (int) Math.ceil(Math.sqrt(edgeCount))));
+        columns = cells;
+        rows = cells;
+        cellWidth = Math.max(1e-9, (maxX - minX) / columns);
+        cellHeight = Math.max(1e-9, (maxY - minY) / rows);
+        cellEdges = buildCellEdges(edgeCount);
+        referenceInside = buildReferenceStates(edgeCount);
+    }
+
+    /** The outline for a room shape string and the room's width and height in metres. */
+    static RoomPolygon of(String shape, double width, double height) {
+        if (shape != null && shape.startsWith(POLYGON_PREFIX)) {
+            try {
+                return parse(shape);
+            } catch (IllegalArgumentException ex) {
+                System.err.println("Invalid room outline, using a rectangle: " + ex.getMessage());
+            }
+        }
+        double w = width, h = height;
+        if ("L-Shape".equals(shape)) {
+            return new RoomPolygon(new double[][]{{0, 0, w, 0, w, h / 2, w / 2, h / 2, w / 2, h, 0, h}}, shape);
+        }
+        if ("Square".equals(shape)) {
+            w = h = Math.min(w, h);
+        }
+        return new RoomPolygon(new double[][]{{0, 0, w, 0, w, h, 0, h}}, shape != null ? shape : "Rectangle");
+    }
+
+    static RoomPolygon parse(String shape) {
+        String body = shape.substring(shape.startsWith(POLYGON_PREFIX) ? POLYGON_PREFIX.length() : 0);
+        ArrayList<double[]> rings = new ArrayList<>();
+        for (String ringText : body.split(";")) {
+            if (ringText.isBlank()) {
+                continue;
+            }
+            String[] points = ringText.trim().split("\\s+");
+            if (points.length < 3) {
+                throw new IllegalArgumentException("a ring needs at least 3 points: " + ringText.trim());
+            }
+            double[] ring = new double[points.length * 2];
+            for (int i = 0; i < points.length; i++) {
+                String[] xy = points[i].split(",");
+                if (xy.length != 2) {
+                    throw new IllegalArgumentException("expected x,y but found " + points[i]);
+                }
+                ring[i * 2] = Double.parseDouble(xy[0]);
+                ring[i * 2 + 1] = Double.parseDouble(xy[1]);
+            }
+            rings.add(ring);
+        }
+        if (rings.isEmpty()) {
+            throw new IllegalArgumentException("no points");
+        }
+        return new RoomPolygon(rings.toArray(new double[0][]), "Polygon");
+    }
+
+    /** The shape string for this outline, suitable for {@link DesignModel#setRoom}. */
+    String toShapeString() {
+        StringBuilder sb = new StringBuilder(POLYGON_PREFIX);
+        for (int r = 0; r < rings.length; r++) {
+            sb.append(r == 0 ? " " : "; ");
+            for (int i = 0; i < rings[r].length; i += 2) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+                sb.append(format(rings[r][i])).append(',').append(format(rings[r][i + 1]));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    public String getLabel() { return label; }
+    public double getMinX() { return minX; }
+    public double getMinY() { return minY; }
+    public double getMaxX() { return maxX; }
+    public double getMaxY() { return maxY; }
+
+    /** The smaller side of an edge grid cell, in metres. */
+    public double getCellSize() {
+        return Math.min(cellWidth, cellHeight);
+    }
+
+    /** Floor area in square metres, holes excluded. */
+    public double getArea() {
+        return area;
+    }
+
+    /** Number of rings; ring 0 is the outline and the rest are holes. */
+    public int getRingCount() {
+        return rings.length;
+    }
+
+    /** Vertices of a ring as x0, y0, x1, y1, ...; do not modify. */
+    double[] getRing(int ring) {
+        return rings[ring];
+    }
+
+    /** The outline as a path with holes, scaled and offset into another coordinate space. */
+    public Path2D.Double toPath(double originX, double originY, double scale) {
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        for (double[] ring : rings) {
+            path.moveTo(originX + ring[0] * scale, originY + ring[1] * scale);
+            for (int i = 2; i < ring.length; i += 2) {
+                path.lineTo(originX + ring[i] * scale, originY + ring[i + 1] * scale);
+            }
+            path.closePath();
+        }
+        return path;
+    }
+
+    public boolean contains(double x, double y) {
+        if (x < minX || x > maxX || y < minY || y > maxY) {
+            return false;
+        }
+        int column = column(x), row = row(y);
+        int cell = row * columns + column;
+        double rx = minX + (column + REFERENCE) * cellWidth;
+        double ry = minY + (row + REFERENCE) * cellHeight;
+        boolean inside = referenceInside[cell];
+        for (int e : cellEdges[cell]) {
+            if (crosses(rx, ry, x, y, e * 4)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Whether the rectangle lies inside the floor. Touching a wall counts as
+     * inside, so furniture can stand flush against it.
+     */
+    public boolean containsRect(double x, double y, double width, double height) {
+        double x1 = x + width, y1 = y + height;
+        if (x < minX || y < minY || x1 > maxX || y1 > maxY) {
+            return false;
+        }
+        // Cells the rectangle only touches along an edge are left out, so a
+        // wall on a cell boundary does not stop furniture standing against it.
+        int c0 = column(x), r0 = row(y);
+        int c1 = Math.max(c0, Math.min(columns - 1, (int) Math.ceil((x1 - minX) / cellWidth) - 1));
+        int r1 = Math.max(r0, Math.min(rows - 1, (int) Math.ceil((y1 - minY) / cellHeight) - 1));
+        for (int row = r0; row <= r1; row++) {
+            for (int column = c0; column <= c1; column++) {
+                int cell = row * columns + column;
+                int[] list = cellEdges[cell];
+                if (list.length == 0) {
+                    if (!referenceInside[cell]) {
+                        return false;
+                    }
+                    continue;
+                }
+                for (int e : list) {
+                    if (entersRect(e * 4, x, y, x1, y1)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        // No wall passes through the rectangle, so it is entirely inside or outside.
+        return contains(x + width / 2, y + height / 2);
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) ((y - minY) / cellHeight)));
+    }
+
+    // Whether the segment from the reference point (ax, ay) to (bx, by) crosses
+    // the edge. An edge endpoint on the line through the segment counts for
+    // one side only, so a path through a vertex shared by two edges flips once.
+    private boolean crosses(double ax, double ay, double bx, double by, int e) {
+        double ex0 = edges[e], ey0 = edges[e + 1], ex1 = edges[e + 2], ey1 = edges[e + 3];
+        boolean side0 = cross(ax, ay, bx, by, ex0, ey0) > 0;
+        boolean side1 = cross(ax, ay, bx, by, ex1, ey1) > 0;
+        if (side0 == side1) {
+            return false;
+        }
+        double da = cross(ex0, ey0, ex1, ey1, ax, ay);
+        double db = cross(ex0, ey0, ex1, ey1, bx, by);
+        return (da > 0) != (db > 0);
+    }
+
+    private static double cross(double ox, double oy, double ax, double ay, double bx, double by) {
+        return (ax - ox) * (by - oy) - (ay - oy) * (bx - ox);
+    }
+
+    // Liang-Barsky clip against the open rectangle: true if any part of the
+    // edge lies strictly inside it.
+    private boolean entersRect(int e, double x0, double y0, double x1, double y1) {
+        double ex = edges[e], ey = edges[e + 1];
+        double dx = edges[e + 2] - ex, dy = edges[e + 3] - ey;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {ex - x0, x1 - ex, ey - y0, y1 - ey};
+        double t0 = 0, t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] <= 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+            }
+        }
+        if (t0 < t1) {
+            return true;
+        }
+        // A single point strictly inside, e.g. a vertex poking into the rectangle.
+        if (t0 == t1) {
+            double px = ex + dx * t0, py = ey + dy * t0;
+            return px > x0 && px < x1 && py > y0 && py < y1;
+        }
+        return false;
+    }
+
+    // For each row slab, the columns a segment passes through.
+    private int[][] buildCellEdges(int edgeCount) {
+        int[] counts = new int[columns * rows];
+        ArrayList<int[]> hits = new ArrayList<>();
+        for (int e = 0; e < edgeCount; e++) {
+            double ex0 = edges[e * 4], ey0 = edges[e * 4 + 1], ex1 = edges[e * 4 + 2], ey1 = edges[e * 4 + 3];
+            int r0 = row(Math.min(ey0, ey1)), r1 = row(Math.max(ey0, ey1));
+            for (int row = r0; row <= r1; row++) {
+                double sy0 = Math.max(Math.min(ey0, ey1), minY + row * cellHeight);
+                double sy1 = Math.min(Math.max(ey0, ey1), minY + (row + 1) * cellHeight);
+                double xa, xb;
+                if (ey0 == ey1) {
+                    xa = ex0;
+                    xb = ex1;
+                } else {
+                    xa = ex0 + (ex1 - ex0) * (sy0 - ey0) / (ey1 - ey0);
+                    xb = ex0 + (ex1 - ex0) * (sy1 - ey0) / (ey1 - ey0);
+                }
+                int c0 = column(Math.min(xa, xb)), c1 = column(Math.max(xa, xb));
+                for (int column = c0; column <= c1; column++) {
+                    int cell = row * columns + column;
+                    counts[cell]++;
+                    hits.add(new int[]{cell, e});
+                }
+            }
+        }
+        int[][] result = new int[columns * rows][];
+        for (int cell = 0; cell < result.length; cell++) {
+            result[cell] = new int[counts[cell]];
+            counts[cell] = 0;
+        }
+        for (int[] hit : hits) {
+            result[hit[0]][counts[hit[0]]++] = hit[1];
+        }
+        return result;
+    }
+
+    // A horizontal scan line through each row's reference points gives the
+    // inside state of every reference point in that row.
+    private boolean[] buildReferenceStates(int edgeCount) {
+        boolean[] inside = new boolean[columns * rows];
+        double[] crossings = new double[edgeCount];
+        for (int row = 0; row < rows; row++) {
+            double y = minY + (row + REFERENCE) * cellHeight;
+            int n = 0;
+            for (int e = 0; e < edgeCount; e++) {
+                double ex0 = edges[e * 4], ey0 = edges[e * 4 + 1], ex1 = edges[e * 4 + 2], ey1 = edges[e * 4 + 3];
+                if ((ey0 <= y) != (ey1 <= y)) {
+                    crossings[n++] = ex0 + (ex1 - ex0) * (y - ey0) / (ey1 - ey0);
+                }
+            }
+            Arrays.sort(crossings, 0, n);
+            int passed = 0;
+            for (int column = 0; column < columns; column++) {
+                double x = minX + (column + REFERENCE) * cellWidth;
+                while (passed < n && crossings[passed] < x) {
+                    passed++;
+                }
+                inside[row * columns + column] = (passed & 1) == 1;
+            }
+        }
+        return inside;
+    }
+}
@@ -0,0 +1,537 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * CPU rasterizer for the 3D preview. Triangles are projected once per frame,
+ * binned into screen tiles and the tiles are filled in parallel, each with its
+ * own slice of the colour and depth buffers, so no locking is needed.
+ */
+class SoftwareRenderer {
+    private static final int TILE_SIZE = 64;
+    private static final float NEAR = 0.05f;
+    private static final double FIELD_OF_VIEW = Math.toRadians(50);
+
+    private BufferedImage image;
+    private int[] pixels;
+    private float[] depth;
+    private int width, height;
+    private int tilesX, tilesY;
+    private int[][] tileTriangles = new int[0][];
+    private int[] tileCounts = new int[0];
+    private int background = 0xD8D8D8;
+
+    // Screen-space triangles for the current frame: x, y, 1/z per vertex.
+    private float[] screen = new float[9 * 256];
+    private int[] screenColors = new int[256];
+    private int triangleCount;
+
+    public void setBackground(Color color) {
+        background = color.getRGB() & 0xFFFFFF;
+    }
+
+    public BufferedImage render(PreviewScene scene, OrbitCamera camera, int width, int height) {
+        ensureBuffers(Math.max(width, 1), Math.max(height, 1));
+        project(scene, camera);
+        binTriangles();
+        IntStream.range(0, tilesX * tilesY).parallel().forEach(this::renderTile);
+        return image;
+    }
+
+    private void ensureBuffers(int width, int height) {
+        if (image == null || width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            depth = new float[width * height];
+            tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+            tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+            tileTriangles = new int[tilesX * tilesY][16];
+            tileCounts = new int[tilesX * tilesY];
+        }
+    }
+
+    private void project(PreviewScene scene, OrbitCamera camera) {
+        float[] eye = camera.getEye();
+        float[] right = new float[3], up = new float[3], forward = new float[3];
+        camera.getBasis(right, up, forward);
+        float focal = (float) (height / 2.0 / Math.tan(FIELD_OF_VIEW / 2));
+        float cx = width / 2f, cy = height / 2f;
+
+        float[] cam = new float[9];
+        float[] clipped = new float[12];
+        triangleCount = 0;
+        for (TriangleBuffer buffer : scene.getBuffers()) {
+            float[] positions = buffer.positions;
+            float[] normals = buffer.normals;
+            int[] colors = buffer.colors;
+            for (int t = 0, count = buffer.count; t < count; t++) {
+                int p = t * 9;
+                int n = t * 3;
+                float toEyeX = eye[0] - positions[p], toEyeY = eye[1] - positions[p + 1], toEyeZ = eye[2] - positions[p + 2];
+                if (normals[n] * toEyeX + normals[n + 1] * toEyeY + normals[n + 2] * toEyeZ <= 0) {
+                    continue;
+                }
+                for (int v = 0; v < 3; v++) {
+                    float dx = positions[p + v * 3] - eye[0];
+                    float dy = positions[p + v * 3 + 1] - eye[1];
+                    float dz = positions[p + v * 3 + 2] - eye[2];
+                    cam[v * 3] = dx * right[0] + dy * right[1] + dz * right[2];
+                    cam[v * 3 + 1] = dx * up[0] + dy * up[1] + dz * up[2];
+                    cam[v * 3 + 2] = dx * forward[0] + dy * forward[1] + dz * forward[2];
+                }
+                int vertices = clipNear(cam, clipped);
+                for (int v = 1; v + 1 < vertices; v++) {
+                    addScreenTriangle(clipped, 0, v, v + 1, focal, cx, cy, colors[t]);
+                }
+            }
+        }
+    }
+
+    private int clipNear(float[] in, float[] out) {
+        int count = 0;
+        for (int i = 0; i < 3; i++) {
+            int j = (i + 1) % 3;
+            float zi = in[i * 3 + 2], zj = in[j * 3 + 2];
+            boolean insideI = zi >= NEAR, insideJ = zj >= NEAR;
+            if (insideI) {
+                out[count * 3] = in[i * 3];
+                out[count * 3 + 1] = in[i * 3 + 1];
+                out[count * 3 + 2] = zi;
+                count++;
+            }
+            if (insideI != insideJ) {
+                float s = (NEAR - zi) / (zj - zi);
+                out[count * 3] = in[i * 3] + s * (in[j * 3] - in[i * 3]);
+                out[count * 3 + 1] = in[i * 3 + 1] + s * (in[j * 3 + 1] - in[i * 3 + 1]);
+                out[count * 3 + 2] = NEAR;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void addScreenTriangle(float[] cam, int a, int b, int c, float focal, float cx, float cy, int color) {
+        if (triangleCount * 9 + 9 > screen.length) {
+            screen = Arrays.copyOf(screen, screen.length * 2);
+            screenColors = Arrays.copyOf(screenColors, screenColors.length * 2);
+        }
+        int o = triangleCount * 9;
+        for (int v : new int[]{a, b, c}) {
+            float z = cam[v * 3 + 2];
+            screen[o++] = cx + cam[v * 3] / z * focal;
+            screen[o++] = cy - cam[v * 3 + 1] / z * focal;
+            screen[o++] = 1f / z;
+        }
+        screenColors[triangleCount++] = color;
+    }
+
+    private void binTriangles() {
+        Arrays.fill(tileCounts, 0);
+        for (int t = 0; t < triangleCount; t++) {
+            int o = t * 9;
+            float minX = Math.min(screen[o], Math.min(screen[o + 3], screen[o + 6]));
+            float maxX = Math.max(screen[o], Math.max(screen[o + 3], screen[o + 6]));
+            float minY = Math.min(screen[o + 1], Math.min(screen[o + 4], screen[o + 7]));
+            float maxY = Math.max(screen[o + 1], Math.max(screen[o + 4], screen[o + 7]));
+            if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+                continue;
+            }
+            int tx0 = Math.max(0, (int) minX / TILE_SIZE), tx1 = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+            int ty0 = Math.max(0, (int) minY / TILE_SIZE), ty1 = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    int tile = ty * tilesX + tx;
+                    if (tileCounts[tile] == tileTriangles[tile].length) {
+                        tileTriangles[tile] = Arrays.copyOf(tileTriangles[tile], tileCounts[tile] * 2);
+                    }
+                    tileTriangles[tile][tileCounts[tile]++] = t;
+                }
+            }
+        }
+    }
+
+    private void renderTile(int tile) {
+        int x0 = (tile % tilesX) * TILE_SIZE, y0 = (tile / tilesX) * TILE_SIZE;
+        int x1 = Math.min(x0 + TILE_SIZE, width), y1 = Math.min(y0 + TILE_SIZE, height);
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(pixels, y * width + x0, y * width + x1, background);
+            Arrays.fill(depth, y * width + x0, y * width + x1, 0f);
+        }
+
+        int[] triangles = tileTriangles[tile];
+        for (int i = 0, count = tileCounts[tile]; i < count; i++) {
+            rasterize(triangles[i], x0, y0, x1, y1);
+        }
+    }
+
+    private void rasterize(int t, int tileX0, int tileY0, int tileX1, int tileY1) {
+        int o = t * 9;
+        float ax = screen[o], ay = screen[o + 1], az = screen[o + 2];
+        float bx = screen[o + 3], by = screen[o + 4], bz = screen[o + 5];
+        float cx = screen[o + 6], cy = screen[o + 7], cz = screen[o + 8];
+
+        float area = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (area == 0) {
+            return;
+        }
+        if (area < 0) {
+            float tx = bx, ty = by, tz = bz;
+            bx = cx; by = cy; bz = cz;
+            cx = tx; cy = ty; cz = tz;
+            area = -area;
+        }
+
+        int minX = Math.max(tileX0, (int) Math.floor(Math.min(ax, Math.min(bx, cx))));
+        int maxX = Math.min(tileX1 - 1, (int) Math.ceil(Math.max(ax, Math.max(bx, cx))));
+        int minY = Math.max(tileY0, (int) Math.floor(Math.min(ay, Math.min(by, cy))));
+        int maxY = Math.min(tileY1 - 1, (int) Math.ceil(Math.max(ay, Math.max(by, cy))));
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        // Edge functions, stepped incrementally across each row.
+        float a0 = by - cy, b0 = cx - bx;
+        float a1 = cy - ay, b1 = ax - cx;
+        float a2 = ay - by, b2 = bx - ax;
+        float px = minX + 0.5f, py = minY + 0.5f;
+        float row0 = (px - bx) * a0 + (py - by) * b0;
+        float row1 = (px - cx) * a1 + (py - cy) * b1;
+        float row2 = (px - ax) * a2 + (py - ay) * b2;
+        float invArea = 1f / area;
+        int color = screenColors[t];
+
+        for (int y = minY; y <= maxY; y++) {
+            float w0 = row0, w1 = row1, w2 = row2;
+            int index = y * width + minX;
+            for (int x = minX; x <= maxX; x++, index++) {
+                if (w0 >= 0 && w1 >= 0 && w2 >= 0) {
+                    float z = (w0 * az + w1 * bz + w2 * cz) * invArea;
+                    if (z > depth[index]) {
+                        depth[index] = z;
+                        pixels[index] = color;
+                    }
+                }
+                w0 += a0;
+                w1 += a1;
+                w2 += a2;
+            }
+            row0 += b0;
+            row1 += b1;
+            row2 += b2;
+        }
+    }
+}
+
+/**
+ * Orbit camera around a target point on the floor. Yaw and pitch are in
+ * radians; the eye sits on a sphere of the given distance.
+ */
+class OrbitCamera {
+    private float targetX, targetY, targetZ;
+    private double yaw = Math.toRadians(30);
+    private double pitch = Math.toRadians(45);
+    private double distance = 10;
+
+    public void setTarget(float x, float y, float z) {
+        targetX = x;
+        targetY = y;
+        targetZ = z;
+    }
+
+    public void orbit(double deltaYaw, double deltaPitch) {
+        yaw += deltaYaw;
+        pitch = Math.max(Math.toRadians(5), Math.min(Math.toRadians(89), pitch + deltaPitch));
+    }
+
+    public void zoom(double factor) {
+        distance = Math.max(1, Math.min(200, distance * factor));
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    public float[] getEye() {
+        return new float[]{
+            (float) (targetX + distance * Math.cos(pitch) * Math.sin(yaw)),
+            (float) (targetY + distance * Math.sin(pitch)),
+            (float) (targetZ + distance * Math.cos(pitch) * Math.cos(yaw))
+        };
+    }
+
+    public void getBasis(float[] right, float[] up, float[] forward) {
+        float[] eye = getEye();
+        forward[0] = targetX - eye[0];
+        forward[1] = targetY - eye[1];
+        forward[2] = targetZ - eye[2];
+        normalize(forward);
+        right[0] = -forward[2];
+        right[1] = 0;
+        right[2] = forward[0];
+        normalize(right);
+        up[0] = right[1] * forward[2] - right[2] * forward[1];
+        up[1] = right[2] * forward[0] - right[0] * forward[2];
+        up[2] = right[0] * forward[1] - right[1] * forward[0];
+    }
+
+    private static void normalize(float[] v) {
+        float length = (float) Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+        if (length > 0) {
+            v[0] /= length;
+            v[1] /= length;
+            v[2] /= length;
+        }
+    }
+}
+
+/**
+ * Triangles for the preview: the room floor and walls plus one extruded box
+ * per furniture item. Every item owns a fixed-size slot in the furniture
+ * buffer, so a change to one item rewrites only its own triangles. Colours
+ * are pre-shaded with a fixed directional light, since lighting does not
+ * change as the camera orbits.
+ */
+class PreviewScene {
+    static final float PIXELS_PER_METRE = 50f;
+    static final float ROOM_ORIGIN = 50f;
+    static final float WALL_HEIGHT = 2.4f;
+    private static final int ITEM_TRIANGLES = 10;
+    private static final float[] LIGHT = normalized(0.4f, 1.0f, 0.6f);
+    private static final float AMBIENT = 0.35f;
+
+    private final TriangleBuffer room = new TriangleBuffer();
+    private final TriangleBuffer furniture = new TriangleBuffer();
+    private final java.util.List<TriangleBuffer> buffers = Arrays.asList(room, furniture);
+    private final IdentityHashMap<FurnitureItem, Integer> slots = new IdentityHashMap<>();
+    private final ArrayList<FurnitureItem> slotItems = new ArrayList<>();
+    private float centerX, centerZ, extent;
+
+    public static PreviewScene fromModel(DesignModel model) {
+        PreviewScene scene = new PreviewScene();
+        scene.setRoom(model.getRoomPolygon(), model.getRoomColor());
+        for (FurnitureItem item : model.getItems()) {
+            scene.addItem(item);
+        }
+        return scene;
+    }
+
+    public void setRoom(RoomPolygon polygon, Color wallColor) {
+        room.count = 0;
+        Shape outline = polygon.toPath(0, 0, 1);
+        centerX = (float) (polygon.getMinX() + polygon.getMaxX()) / 2;
+        centerZ = (float) (polygon.getMinY() + polygon.getMaxY()) / 2;
+        extent = (float) Math.max(polygon.getMaxX() - polygon.getMinX(), polygon.getMaxY() - polygon.getMinY());
+
+        addFloor(polygon, new Color(0.85f, 0.8f, 0.7f));
+        for (int r = 0; r < polygon.getRingCount(); r++) {
+            double[] ring = polygon.getRing(r);
+            for (int i = 0; i < ring.length; i += 2) {
+                int j = (i + 2) % ring.length;
+                addWall(outline, (float) ring[i], (float) ring[i + 1], (float) ring[j], (float) ring[j + 1], wallColor);
+            }
+        }
+    }
+
+    // Cuts the floor into horizontal slabs at every vertex depth; within a
+    // slab the edges crossing it pair up, left to right, into trapezoids.
+    private void addFloor(RoomPolygon polygon, Color color) {
+        ArrayList<double[]> edges = new ArrayList<>();
+        TreeSet<Double> depths = new TreeSet<>();
+        for (int r = 0; r < polygon.getRingCount(); r++) {
+            double[] ring = polygon.getRing(r);
+            for (int i = 0; i < ring.length; i += 2) {
+                int j = (i + 2) % ring.length;
+                if (ring[i + 1] != ring[j + 1]) {
+                    edges.add(new double[]{ring[i], ring[i + 1], ring[j], ring[j + 1]});
+                }
+                depths.add(ring[i + 1]);
+            }
+        }
+        Double previous = null;
+        double[] crossings = new double[edges.size() * 3];
+        for (double z1 : depths) {
+            if (previous != null) {
+                double z0 = previous, middle = (z0 + z1) / 2;
+                int n = 0;
+                for (double[] e : edges) {
+                    if ((e[1] <= middle) != (e[3] <= middle)) {
+                        crossings[n++] = xAt(e, middle);
+                        crossings[n++] = xAt(e, z0);
+                        crossings[n++] = xAt(e, z1);
+                    }
+                }
+                Integer[] order = new Integer[n / 3];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i * 3;
+                }
+                double[] sorted = crossings;
+                Arrays.sort(order, Comparator.comparingDouble(i -> sorted[i]));
+                for (int i = 0; i + 1 < order.length; i += 2) {
+                    int a = order[i], b = order[i + 1];
+                    addQuad(room, room.count, (float) crossings[a + 1], 0, (float) z0, (float) crossings[b + 1], 0, (float) z0,
+                            (float) crossings[b + 2], 0, (float) z1, (float) crossings[a + 2], 0, (float) z1, 0, 1, 0, color);
+                }
+            }
+            previous = z1;
+        }
+    }
+
+    private static double xAt(double[] edge, double z) {
+        return edge[0] + (edge[2] - edge[0]) * (z - edge[1]) / (edge[3] - edge[1]);
+    }
+
+    private void addWall(Shape outline, float x0, float z0, float x1, float z1, Color color) {
+        float dx = x1 - x0, dz = z1 - z0;
+        float length = (float) Math.hypot(dx, dz);
+        if (length == 0) {
+            return;
+        }
+        float nx = -dz / length, nz = dx / length;
+        if (!outline.contains((x0 + x1) / 2 + nx * 0.01, (z0 + z1) / 2 + nz * 0.01)) {
+            nx = -nx;
+            nz = -nz;
+        }
+        addQuad(room, room.count, x0, 0, z0, x1, 0, z1, x1, WALL_HEIGHT, z1, x0, WALL_HEIGHT, z0, nx, 0, nz, color);
+    }
+
+    public void addItem(FurnitureItem item) {
+        if (slots.containsKey(item)) {
+            updateItem(item);
+            return;
+        }
+        slots.put(item, slotItems.size());
+        slotItems.add(item);
+        writeItem(item, slotItems.size() - 1);
+    }
+
+    public void updateItem(FurnitureItem item) {
+        Integer slot = slots.get(item);
+        if (slot != null) {
+            writeItem(item, slot);
+        }
+    }
+
+    /** Frees the item's slot by moving the last slot into it. */
+    public void removeItem(FurnitureItem item) {
+        Integer slot = slots.remove(item);
+        if (slot == null) {
+            return;
+        }
+        int last = slotItems.size() - 1;
+        FurnitureItem moved = slotItems.remove(last);
+        if (slot != last) {
+            slotItems.set(slot, moved);
+            slots.put(moved, slot);
+            furniture.copy(last * ITEM_TRIANGLES, slot * ITEM_TRIANGLES, ITEM_TRIANGLES);
+        }
+        furniture.count = slotItems.size() * ITEM_TRIANGLES;
+    }
+
+    public void clearItems() {
+        slots.clear();
+        slotItems.clear();
+        furniture.count = 0;
+    }
+
+    private void writeItem(FurnitureItem item, int slot) {
+        float[] size = FurnitureItem.defaultSize(item.getType());
+        float x = (item.getX() - ROOM_ORIGIN) / PIXELS_PER_METRE;
+        float z = (item.getY() - ROOM_ORIGIN) / PIXELS_PER_METRE;
+        float w = item.getWidth() / PIXELS_PER_METRE;
+        float d = item.getHeight() / PIXELS_PER_METRE;
+        furniture.count = Math.max(furniture.count, (slot + 1) * ITEM_TRIANGLES);
+        addBox(slot * ITEM_TRIANGLES, x, z, w, d, size[1], Math.toRadians(item.getRotation()),
+                FurnitureItem.defaultColor(item.getType()));
+    }
+
+    private void addBox(int index, float x, float z, float w, float d, float h, double rotation, Color color) {
+        float cx = x + w / 2, cz = z + d / 2;
+        float cos = (float) Math.cos(rotation), sin = (float) Math.sin(rotation);
+        float[] px = new float[4], pz = new float[4];
+        float[][] corners = {{-w / 2, -d / 2}, {w / 2, -d / 2}, {w / 2, d / 2}, {-w / 2, d / 2}};
+        for (int i = 0; i < 4; i++) {
+            px[i] = cx + corners[i][0] * cos - corners[i][1] * sin;
+            pz[i] = cz + corners[i][0] * sin + corners[i][1] * cos;
+        }
+        index = addQuad(furniture, index, px[0], h, pz[0], px[1], h, pz[1], px[2], h, pz[2], px[3], h, pz[3],
+                0, 1, 0, color);
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            float ex = px[j] - px[i], ez = pz[j] - pz[i];
+            float length = (float) Math.hypot(ex, ez);
+            // Corners run clockwise in plan (z down), so the outward normal is to the left.
+            float nx = ez / length, nz = -ex / length;
+            index = addQuad(furniture, index, px[i], 0, pz[i], px[j], 0, pz[j], px[j], h, pz[j], px[i], h, pz[i],
+                    nx, 0, nz, color);
+        }
+    }
+
+    private static int addQuad(TriangleBuffer buffer, int index,
+            float ax, float ay, float az, float bx, float by, float bz,
+            float cx, float cy, float cz, float dx, float dy, float dz,
+            float nx, float ny, float nz, Color color) {
+        int shaded = shade(color, nx, ny, nz);
+        buffer.set(index, ax, ay, az, bx, by, bz, cx, cy, cz, nx, ny, nz, shaded);
+        buffer.set(index + 1, ax, ay, az, cx, cy, cz, dx, dy, dz, nx, ny, nz, shaded);
+        return index + 2;
+    }
+
+    private static int shade(Color color, float nx, float ny, float nz) {
+        float lambert = Math.max(0, nx * LIGHT[0] + ny * LIGHT[1] + nz * LIGHT[2]);
+        float intensity = AMBIENT + (1 - AMBIENT) * lambert;
+        int r = Math.min(255, (int) (color.getRed() * intensity));
+        int g = Math.min(255, (int) (color.getGreen() * intensity));
+        int b = Math.min(255, (int) (color.getBlue() * intensity));
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static float[] normalized(float x, float y, float z) {
+        float length = (float) Math.sqrt(x * x + y * y + z * z);
+        return new float[]{x / length, y / length, z / length};
+    }
+
+    public java.util.List<TriangleBuffer> getBuffers() { return buffers; }
+    public int getTriangleCount() { return room.count + furniture.count; }
+    public float getCenterX() { return centerX; }
+    public float getCenterZ() { return centerZ; }
+    public float getExtent() { return extent; }
+}
+
+/** Growable arrays of world-space triangles with one normal and colour each. */
+class TriangleBuffer {
+    float[] positions = new float[9 * 64];
+    float[] normals = new float[3 * 64];
+    int[] colors = new int[64];
+    int count;
+
+    void set(int index, float ax, float ay, float az, float bx, float by, float bz,
+            float cx, float cy, float cz, float nx, float ny, float nz, int color) {
+        if (index >= colors.length) {
+            int capacity = Math.max(colors.length * 2, index + 1);
+            positions = Arrays.copyOf(positions, capacity * 9);
+            normals = Arrays.copyOf(normals, capacity * 3);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+        int p = index * 9;
+        positions[p] = ax; positions[p + 1] = ay; positions[p + 2] = az;
+        positions[p + 3] = bx; positions[p + 4] = by; positions[p + 5] = bz;
+        positions[p + 6] = cx; positions[p + 7] = cy; positions[p + 8] = cz;
+        int n = index * 3;
+        normals[n] = nx; normals[n + 1] = ny; normals[n + 2] = nz;
+        colors[index] = color;
+        count = Math.max(count, index + 1);
+    }
+
+    void copy(int from, int to, int triangles) {
+        System.arraycopy(positions, from * 9, positions, to * 9, triangles * 9);
+        System.arraycopy(normals, from * 3, normals, to * 3, triangles * 3);
+        System.arraycopy(colors, from, colors, to, triangles);
+    }
+}
@@ -0,0 +1,314 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import javax.imageio.ImageIO;
+
+/**
+ * Persistent cache of pre-scaled sprites in one memory-mapped file, keyed by
+ * a hash of the source image bytes and the target size. A hit copies the raw
+ * ARGB pixels out of the mapping, so warm starts skip PNG decoding and
+ * SCALE_SMOOTH rescaling.
+ *
+ * <p>The file holds a header, a fixed table of index slots and a data region
+ * used as a ring: new sprites are appended and whatever they overwrite is
+ * evicted, which bounds the file size. Every entry carries a CRC32 of its
+ * pixels that is checked on read; a corrupt entry is dropped and re-decoded,
+ * and a file with a bad header is reinitialized. If the file cannot be
+ * opened or locked (e.g. a second instance is running), sprites are decoded
+ * without caching.
+ */
+class SpriteCache {
+    private static final int MAGIC = 0x46465343;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOTS = 4096;
+    private static final int ENTRY_SIZE = 64;
+    private static final long DATA_START = HEADER_SIZE + (long) SLOTS * ENTRY_SIZE;
+    private static final long DEFAULT_CAPACITY = 32L * 1024 * 1024;
+
+    private static SpriteCache shared;
+
+    private final Map<String, byte[]> sourceHashes = new ConcurrentHashMap<>();
+    private final HashMap<String, Integer> slotsByKey = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private MappedByteBuffer buffer;
+    private long dataSize;
+    private long writePos;
+    private long sequence;
+    private int hits, misses;
+
+    public static synchronized SpriteCache shared() {
+        if (shared == null) {
+            String path = System.getProperty("furnifit.spriteCache",
+                    System.getProperty("user.home") + File.separator + ".furnifit" + File.separator + "sprites.cache");
+            shared = new SpriteCache(Paths.get(path), DEFAULT_CAPACITY);
+        }
+        return shared;
+    }
+
+    SpriteCache(Path file, long capacity) {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                return;
+            }
+            long size = Math.max(capacity, DATA_START + 1024 * 1024);
+            // The lock and mapping stay valid for the life of the process.
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            dataSize = size - DATA_START;
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != size) {
+                reset(size);
+            } else {
+                readIndex();
+            }
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Sprite cache disabled: " + ex.getMessage());
+            buffer = null;
+        }
+    }
+
+    private void reset(long size) {
+        for (long i = 0; i < DATA_START; i += 8) {
+            buffer.putLong((int) i, 0L);
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, size);
+        buffer.putLong(16, 0L);
+        buffer.putLong(24, 0L);
+        writePos = 0;
+        sequence = 0;
+        slotsByKey.clear();
+        freeSlots.clear();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            freeSlots.add(slot);
+        }
+    }
+
+    private void readIndex() {
+        writePos = buffer.getLong(16);
+        sequence = buffer.getLong(24);
+        if (writePos < 0 || writePos > dataSize) {
+            reset(buffer.getLong(8));
+            return;
+        }
+        for (int slot = 0; slot < SLOTS; slot++) {
+            int e = entryOffset(slot);
+            long offset = buffer.getLong(e + 16);
+            int length = buffer.getInt(e + 24);
+            int width = buffer.getInt(e + 4), height = buffer.getInt(e + 8);
+            boolean valid = buffer.getInt(e) == 1 && offset >= 0 && length == width * height * 4
+                    && width > 0 && height > 0 && offset + length <= dataSize;
+            if (valid) {
+                byte[] hash = new byte[16];
+                buffer.get(e + 32, hash);
+                slotsByKey.put(key(hash, width, height), slot);
+            } else {
+                buffer.putInt(e, 0);
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the image at the given classpath resource or file path scaled to
+     * width x height, from the cache when possible. Returns null if the
+     * source cannot be read.
+     */
+    public BufferedImage load(String source, int width, int height) {
+        byte[] hash = sourceHashes.get(source);
+        byte[] bytes = null;
+        if (hash == null) {
+            bytes = readSource(source);
+            if (bytes == null) {
+                return null;
+            }
+            hash = digest(bytes);
+            sourceHashes.put(source, hash);
+        }
+
+        BufferedImage cached = get(hash, width, height);
+        if (cached != null) {
+            return cached;
+        }
+        if (bytes == null) {
+            bytes = readSource(source);
+            if (bytes == null) {
+                return null;
+            }
+        }
+        BufferedImage scaled = decode(bytes, width, height);
+        if (scaled != null) {
+            put(hash, scaled);
+        }
+        return scaled;
+    }
+
+    private synchronized BufferedImage get(byte[] hash, int width, int height) {
+        if (buffer == null) {
+            return null;
+        }
+        Integer slot = slotsByKey.get(key(hash, width, height));
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+        int e = entryOffset(slot);
+        int offset = (int) (DATA_START + buffer.getLong(e + 16));
+        int length = buffer.getInt(e + 24);
+        if (crc(offset, length) != buffer.getInt(e + 12)) {
+            evict(slot);
+            misses++;
+            return null;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        buffer.duplicate().position(offset).asIntBuffer().get(pixels);
+        hits++;
+        return image;
+    }
+
+    private synchronized void put(byte[] hash, BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int length = width * height * 4;
+        if (buffer == null || length > dataSize || slotsByKey.containsKey(key(hash, width, height))) {
+            return;
+        }
+        if (writePos + length > dataSize) {
+            writePos = 0;
+        }
+        evictOverlapping(writePos, writePos + length);
+        if (freeSlots.isEmpty()) {
+            evict(oldestSlot());
+        }
+
+        int offset = (int) (DATA_START + writePos);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        buffer.duplicate().position(offset).asIntBuffer().put(pixels, 0, width * height);
+
+        int slot = freeSlots.poll();
+        int e = entryOffset(slot);
+        buffer.putInt(e + 4, width);
+        buffer.putInt(e + 8, height);
+        buffer.putInt(e + 12, crc(offset, length));
+        buffer.putLong(e + 16, writePos);
+        buffer.putInt(e + 24, length);
+        buffer.put(e + 32, hash);
+        buffer.putLong(e + 48, ++sequence);
+        buffer.putInt(e, 1);
+        slotsByKey.put(key(hash, width, height), slot);
+
+        writePos += length;
+        buffer.putLong(16, writePos);
+        buffer.putLong(24, sequence);
+    }
+
+    private void evictOverlapping(long from, long to) {
+        for (Iterator<Integer> it = slotsByKey.values().iterator(); it.hasNext(); ) {
+            int slot = it.next();
+            int e = entryOffset(slot);
+            long offset = buffer.getLong(e + 16);
+            if (offset < to && offset + buffer.getInt(e + 24) > from) {
+                it.remove();
+                buffer.putInt(e, 0);
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    private int oldestSlot() {
+        int oldest = -1;
+        long oldestSequence = Long.MAX_VALUE;
+        for (int slot : slotsByKey.values()) {
+            long s = buffer.getLong(entryOffset(slot) + 48);
+            if (s < oldestSequence) {
+                oldestSequence = s;
+                oldest = slot;
+            }
+        }
+        return oldest;
+    }
+
+    private void evict(int slot) {
+        int e = entryOffset(slot);
+        byte[] hash = new byte[16];
+        buffer.get(e + 32, hash);
+        slotsByKey.remove(key(hash, buffer.getInt(e + 4), buffer.getInt(e + 8)));
+        buffer.putInt(e, 0);
+        freeSlots.add(slot);
+    }
+
+    private int crc(int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+
+    public synchronized String getStats() {
+        return String.format("sprite cache: %d entries, %d hits, %d misses", slotsByKey.size(), hits, misses);
+    }
+
+    private static int entryOffset(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+
+    private static String key(byte[] hash, int width, int height) {
+        StringBuilder key = new StringBuilder(48);
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.append(':').append(width).append('x').append(height).toString();
+    }
+
+    private static byte[] readSource(String source) {
+        try (InputStream in = source.startsWith("/") && SpriteCache.class.getResource(source) != null
+                ? SpriteCache.class.getResourceAsStream(source) : new FileInputStream(source)) {
+            return in.readAllBytes();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(bytes), 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static BufferedImage decode(byte[] bytes, int width, int height) {
+        try {
+            BufferedImage source = ImageIO.read(new ByteArrayInputStream(bytes));
+            if (source == null) {
+                return null;
+            }
+            BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = scaled.createGraphics();
+            g.drawImage(source.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+            g.dispose();
+            return scaled;
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+}
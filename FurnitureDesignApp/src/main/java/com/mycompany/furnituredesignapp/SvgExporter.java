@@ -0,0 +1,237 @@
+package com.mycompany.furnituredesignapp;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Writes floor plans as SVG in a single pass straight to an output stream,
+ * for printing at scale (one user unit is a centimetre and the page size is
+ * given in millimetres). Nothing is buffered per item: each piece of
+ * furniture becomes one {@code <use>} element written as it is visited, and
+ * each sprite is written once, as a shared {@code <symbol>}, the first time
+ * its type appears. Sprites are either embedded as base64 PNG, streamed from
+ * the resource without loading it whole, or copied into a directory next to
+ * the SVG and linked. The room grid is an SVG pattern rather than lines, so
+ * its size does not depend on the room either.
+ *
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.SvgExporter [items] [out.svg]
+ * </pre>
+ */
+class SvgExporter implements Closeable {
+    private static final double CM_PER_PIXEL = 100.0 / PreviewScene.PIXELS_PER_METRE;
+
+    private final OutputStream out;
+    private final Writer writer;
+    private final File spriteDir;
+    private final HashMap<String, String> symbols = new HashMap<>();
+
+    /** Embeds sprites if spriteDir is null, otherwise copies them there and links to them. */
+    SvgExporter(OutputStream out, File spriteDir) {
+        this.out = out;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        this.spriteDir = spriteDir;
+    }
+
+    /** Writes the SVG header for a drawing covering the given area, in metres. */
+    public void begin(double x, double y, double width, double height) throws IOException {
+        double margin = 0.2;
+        double w = (width + 2 * margin) * 100, h = (height + 2 * margin) * 100;
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\""
+                + " width=\"" + num(w * 10) + "mm\" height=\"" + num(h * 10) + "mm\""
+                + " viewBox=\"" + num((x - margin) * 100) + ' ' + num((y - margin) * 100) + ' ' + num(w) + ' ' + num(h)
+                + "\">\n");
+        // 20 cm squares, the same as the 10 px grid in the editor.
+        writer.write("<defs><pattern id=\"grid\" width=\"20\" height=\"20\" patternUnits=\"userSpaceOnUse\">"
+                + "<path d=\"M20 0H0V20\" fill=\"none\" stroke=\"#c8c8c8\" stroke-width=\"0.5\"/></pattern></defs>\n");
+    }
+
+    /**
+     * Starts a room whose corner is at (x, y) metres in the drawing. Its
+     * furniture follows with {@link #item} and the room ends with {@link #endRoom}.
+     */
+    public void beginRoom(RoomPolygon polygon, Color color, double x, double y, String label) throws IOException {
+        writer.write("<g transform=\"translate(" + num(x * 100) + ' ' + num(y * 100) + ")\">\n");
+        String path = path(polygon);
+        writer.write("<path d=\"" + path + "\" fill-rule=\"evenodd\" fill=\"" + hex(color) + "\"/>\n");
+        writer.write("<path d=\"" + path + "\" fill-rule=\"evenodd\" fill=\"url(#grid)\"/>\n");
+        writer.write("<path d=\"" + path + "\" fill=\"none\" stroke=\"#000\" stroke-width=\"2\"/>\n");
+        if (label != null) {
+            writer.write("<text x=\"" + num(polygon.getMinX() * 100 + 10) + "\" y=\"" + num(polygon.getMinY() * 100 + 24)
+                    + "\" font-family=\"sans-serif\" font-size=\"16\">" + escape(label) + "</text>\n");
+        }
+    }
+
+    public void endRoom() throws IOException {
+        writer.write("</g>\n");
+    }
+
+    /** One piece of furniture, with its geometry in design panel pixels as stored on the item. */
+    public void item(String type, int x, int y, int width, int height, int rotation) throws IOException {
+        double cx = (x - PreviewScene.ROOM_ORIGIN) * CM_PER_PIXEL, cy = (y - PreviewScene.ROOM_ORIGIN) * CM_PER_PIXEL;
+        double cw = width * CM_PER_PIXEL, ch = height * CM_PER_PIXEL;
+        String geometry = " x=\"" + num(cx) + "\" y=\"" + num(cy) + "\" width=\"" + num(cw) + "\" height=\"" + num(ch) + '"';
+        String transform = rotation % 360 == 0 ? ""
+                : " transform=\"rotate(" + rotation + ' ' + num(cx + cw / 2) + ' ' + num(cy + ch / 2) + ")\"";
+        String symbol = symbol(type);
+        if (symbol != null) {
+            writer.write("<use xlink:href=\"#" + symbol + '"' + geometry + transform + "/>\n");
+            return;
+        }
+        // No sprite: the grey placeholder the editor draws.
+        writer.write("<g" + transform + "><rect" + geometry + " rx=\"10\" fill=\"#808080\" stroke=\"#000\"/>"
+                + "<text x=\"" + num(cx + cw / 2) + "\" y=\"" + num(cy + ch / 2) + "\" text-anchor=\"middle\""
+                + " dominant-baseline=\"middle\" font-family=\"sans-serif\" font-size=\"14\">" + escape(type)
+                + "</text></g>\n");
+    }
+
+    // Writes the sprite's symbol on first use; null if the type has no sprite.
+    private String symbol(String type) throws IOException {
+        if (symbols.containsKey(type)) {
+            return symbols.get(type);
+        }
+        String source = "/" + type.toLowerCase(Locale.ROOT) + ".png";
+        String id = "sprite-" + type.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "-");
+        try (InputStream in = SvgExporter.class.getResourceAsStream(source)) {
+            if (in == null) {
+                id = null;
+            } else {
+                // The image fills a unit box and is stretched to each item, like drawImage.
+                writer.write("<symbol id=\"" + id + "\" viewBox=\"0 0 1 1\" preserveAspectRatio=\"none\">"
+                        + "<image width=\"1\" height=\"1\" preserveAspectRatio=\"none\" xlink:href=\"");
+                if (spriteDir == null) {
+                    writer.write("data:image/png;base64,");
+                    writer.flush();
+                    OutputStream encoder = Base64.getEncoder().wrap(new FilterOutputStream(out) {
+                        @Override
+                        public void close() throws IOException {
+                            flush();
+                        }
+                    });
+                    in.transferTo(encoder);
+                    encoder.close();
+                } else {
+                    Files.createDirectories(spriteDir.toPath());
+                    String name = source.substring(1);
+                    Files.copy(in, new File(spriteDir, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    writer.write(escape(spriteDir.getName() + "/" + name));
+                }
+                writer.write("\"/></symbol>\n");
+            }
+        }
+        symbols.put(type, id);
+        return id;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.write("</svg>\n");
+        writer.close();
+    }
+
+    private static String path(RoomPolygon polygon) {
+        StringBuilder d = new StringBuilder();
+        for (int r = 0; r < polygon.getRingCount(); r++) {
+            double[] ring = polygon.getRing(r);
+            for (int i = 0; i < ring.length; i += 2) {
+                d.append(i == 0 ? 'M' : 'L').append(num(ring[i] * 100)).append(' ').append(num(ring[i + 1] * 100));
+            }
+            d.append('Z');
+        }
+        return d.toString();
+    }
+
+    private static String num(double value) {
+        double rounded = Math.round(value * 100) / 100.0;
+        return rounded == Math.rint(rounded) ? Long.toString((long) rounded) : Double.toString(rounded);
+    }
+
+    private static String hex(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /** Directory for linked sprites next to an SVG file: plan.svg gets plan_sprites. */
+    static File spriteDirFor(File svg) {
+        String name = svg.getName().replaceFirst("\\.svg$", "");
+        return new File(svg.getAbsoluteFile().getParentFile(), name + "_sprites");
+    }
+
+    /** Exports one design. */
+    public static void export(DesignSnapshot snapshot, File file, boolean embedSprites) throws IOException {
+        RoomPolygon polygon = RoomPolygon.of(snapshot.getRoomShape(), snapshot.getRoomWidth(), snapshot.getRoomHeight());
+        try (SvgExporter svg = new SvgExporter(new BufferedOutputStream(new FileOutputStream(file)),
+                embedSprites ? null : spriteDirFor(file))) {
+            svg.begin(polygon.getMinX(), polygon.getMinY(), polygon.getMaxX() - polygon.getMinX(),
+                    polygon.getMaxY() - polygon.getMinY());
+            svg.beginRoom(polygon, snapshot.getRoomColor(), 0, 0, null);
+            for (ItemState item : snapshot.getItems()) {
+                svg.item(item.type, item.x, item.y, item.width, item.height, item.rotation);
+            }
+            svg.endRoom();
+        }
+    }
+
+    /**
+     * Exports every room of a building at its place on the floor plan. Rooms
+     * are read one at a time without being kept, so a building of any size
+     * is exported in the memory of its largest room. Each room is read as a
+     * copy, so this can run in the background while a room is being edited.
+     */
+    public static void export(BuildingDocument building, File file, boolean embedSprites) throws IOException {
+        java.util.List<RoomInfo> rooms = building.getRooms();
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        for (RoomInfo room : rooms) {
+            minX = Math.min(minX, room.planX);
+            minY = Math.min(minY, room.planY);
+            maxX = Math.max(maxX, room.planX + room.width);
+            maxY = Math.max(maxY, room.planY + room.height);
+        }
+        try (SvgExporter svg = new SvgExporter(new BufferedOutputStream(new FileOutputStream(file)),
+                embedSprites ? null : spriteDirFor(file))) {
+            svg.begin(minX, minY, maxX - minX, maxY - minY);
+            for (RoomInfo room : rooms) {
+                DesignData data = building.read(room);
+                svg.beginRoom(RoomPolygon.of(data.roomShape, data.roomWidth, data.roomHeight), data.roomColor,
+                        room.planX, room.planY, room.name);
+                for (FurnitureItem item : data.furnitureItems) {
+                    svg.item(item.getType(), item.getX(), item.getY(), item.getWidth(), item.getHeight(),
+                            item.getRotation());
+                }
+                svg.endRoom();
+            }
+        }
+    }
+
+    /** Exports a generated design and reports the speed and output size. */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        File file = new File(args.length > 1 ? args[1] : "plan.svg");
+        String[] types = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+        Random random = new Random(5);
+        DesignModel model = new DesignModel();
+        model.setRoom(60, 40, "Rectangle", Color.WHITE);
+        for (int i = 0; i < count; i++) {
+            // A few sizes, so sprites are scaled once per size rather than per item.
+            model.add(new FurnitureItem(types[random.nextInt(types.length)], 50 + random.nextInt(2900),
+                    50 + random.nextInt(1900), 60 + 20 * random.nextInt(3), 60 + 20 * random.nextInt(3)));
+            if (random.nextInt(4) == 0) {
+                model.rotate(model.getItems().get(model.getItems().size() - 1), 90);
+            }
+        }
+        DesignSnapshot snapshot = model.snapshot();
+        long start = System.nanoTime();
+        export(snapshot, file, true);
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%d items to %s: %.1f MB in %.0f ms (%.2f us per item)%n", count, file,
+                file.length() / 1e6, millis, millis * 1000 / count);
+    }
+}
@@ -0,0 +1,368 @@
+package com.mycompany.furnituredesignapp;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Replays an {@link InteractionTrace} into a {@link DesignPanel} without a
+ * window and reports how long each event took to handle and to paint. Paints
+ * are not scheduled: after each event the area the panel asked to repaint is
+ * painted straight away into an image, as Swing would before the next event,
+ * so the numbers are per event and the same on every run. Replays at full
+ * speed by default; with {@code --realtime} events are sent at their recorded
+ * times and latency counts from then, so a slow event also delays the ones
+ * behind it as it would for the user. With {@code --max-p99} the exit status
+ * is 1 if latency p99 exceeds the limit, so a trace can guard against
+ * regressions. The final design's checksum shows whether two replays did
+ * the same thing.
+ *
+ * <p>With {@code --synthesize} it instead records a generated session of
+ * placing and dragging furniture, for use where there is no recorded trace.
+ *
+ * <pre>
+ * java -cp target/classes com.mycompany.furnituredesignapp.TraceReplay \
+ *     trace.fdt [--realtime] [--warmup runs] [--max-p99 ms]
+ * java -cp target/classes com.mycompany.furnituredesignapp.TraceReplay \
+ *     --synthesize trace.fdt [items] [drags]
+ * </pre>
+ */
+class TraceReplay {
+    private static final String[] TYPES = {"Chair", "Table", "Sofa", "Bed", "Cabinet", "Lamp"};
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        java.util.List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (options.remove("--synthesize")) {
+            File file = new File(options.get(0));
+            int items = options.size() > 1 ? Integer.parseInt(options.get(1)) : 200;
+            int drags = options.size() > 2 ? Integer.parseInt(options.get(2)) : 500;
+            DesignSnapshot recorded = synthesize(file, items, drags);
+            System.out.printf("%s: %.1f KB, recorded design: %d items, checksum %08x%n", file, file.length() / 1024.0,
+                    recorded.getItemCount(), checksum(recorded));
+            System.exit(0);
+        }
+        boolean realtime = options.remove("--realtime");
+        int warmup = intOption(options, "--warmup", 1);
+        int maxP99 = intOption(options, "--max-p99", -1);
+        File file = new File(options.get(0));
+
+        for (int i = 0; i < warmup; i++) {
+            new TraceReplay(InteractionTrace.read(file)).run(false);
+        }
+        InteractionTrace trace = InteractionTrace.read(file);
+        TraceReplay replay = new TraceReplay(trace);
+        long start = System.nanoTime();
+        replay.run(realtime);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%s: %d events over %.1f s recorded, replayed %s in %.2f s%n", file.getName(),
+                trace.events.size(), trace.getDuration() / 1000.0, realtime ? "in real time" : "at full speed", elapsed);
+        System.out.println("ms              p50     p95     p99     max");
+        print("handling", replay.handling);
+        print("paint", replay.painting);
+        double p99 = print("latency", replay.latency);
+        System.out.printf("mean repainted area %.0f px, final design: %d items, checksum %08x%n",
+                replay.paintedArea / (double) Math.max(1, replay.latency.length), replay.itemCount, replay.checksum);
+        if (maxP99 >= 0 && p99 > maxP99) {
+            System.out.printf("FAIL: latency p99 %.2f ms exceeds %d ms%n", p99, maxP99);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static int intOption(java.util.List<String> options, String name, int fallback) {
+        int index = options.indexOf(name);
+        if (index < 0) {
+            return fallback;
+        }
+        int value = Integer.parseInt(options.get(index + 1));
+        options.subList(index, index + 2).clear();
+        return value;
+    }
+
+    // Prints percentiles of nanosecond samples and returns p99 in milliseconds.
+    private static double print(String label, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double[] values = {percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0};
+        System.out.printf("%-12s %7.3f %7.3f %7.3f %7.3f%n", label, values[0], values[1], values[2], values[3]);
+        return values[2];
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e6;
+    }
+
+    private final InteractionTrace trace;
+    private DesignPanel panel;
+    private DirtyRegions dirty;
+    private BufferedImage image;
+    private long[] handling, painting, latency;
+    private long paintedArea;
+    private int itemCount;
+    private long checksum;
+
+    private TraceReplay(InteractionTrace trace) {
+        this.trace = trace;
+    }
+
+    private void run(boolean realtime) throws Exception {
+        int count = trace.events.size();
+        handling = new long[count];
+        painting = new long[count];
+        latency = new long[count];
+        onEventThread(() -> {
+            dirty = new DirtyRegions();
+            RepaintManager.setCurrentManager(dirty);
+            panel = new DesignPanel();
+            resize(trace.panelWidth, trace.panelHeight);
+            panel.setDesignData(trace.design);
+            panel.restoreInteraction(trace.selectedId, trace.placingType);
+            paintDirty();
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            InteractionTrace.Event event = trace.events.get(i);
+            long due = start + event.time * 1_000_000L;
+            if (realtime) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    Thread.sleep(wait / 1_000_000L, (int) (wait % 1_000_000L));
+                }
+            }
+            int index = i;
+            onEventThread(() -> {
+                long begin = System.nanoTime();
+                apply(event);
+                long handled = System.nanoTime();
+                paintedArea += paintDirty();
+                long painted = System.nanoTime();
+                handling[index] = handled - begin;
+                painting[index] = painted - handled;
+                latency[index] = painted - (realtime ? Math.min(due, begin) : begin);
+            });
+        }
+        onEventThread(() -> {
+            itemCount = panel.getModel().snapshot().getItemCount();
+            checksum = checksum(panel.getModel().snapshot());
+        });
+    }
+
+    /** A checksum of every item's id and geometry, in paint order. */
+    static long checksum(DesignSnapshot snapshot) {
+        CRC32 crc = new CRC32();
+        for (ItemState item : snapshot.getItems()) {
+            for (long value : new long[]{item.id, item.x, item.y, item.width, item.height, item.rotation}) {
+                crc.update(Long.toString(value).getBytes());
+                crc.update(',');
+            }
+        }
+        return crc.getValue();
+    }
+
+    private void apply(InteractionTrace.Event event) {
+        switch (event.kind) {
+            case PRESS:
+                dispatch(panel, MouseEvent.MOUSE_PRESSED, event);
+                break;
+            case RELEASE:
+                dispatch(panel, MouseEvent.MOUSE_RELEASED, event);
+                break;
+            case DRAG:
+                dispatch(panel, MouseEvent.MOUSE_DRAGGED, event);
+                break;
+            case PLACE:
+                panel.setSelectedFurniture(event.text);
+                break;
+            case ROTATE:
+                panel.rotateSelectedFurniture();
+                break;
+            case RESIZE:
+                panel.resizeSelectedFurniture(event.factor);
+                break;
+            case DELETE:
+                panel.removeSelectedFurniture();
+                break;
+            case ROOM:
+                panel.onRoomConfigChanged(event.width, event.height, event.text, event.color);
+                break;
+            case DESIGN:
+                panel.setDesignData(event.design);
+                break;
+            case PANEL_SIZE:
+                resize(event.x, event.y);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void dispatch(DesignPanel panel, int id, InteractionTrace.Event event) {
+        panel.dispatchEvent(new MouseEvent(panel, id, event.time, event.modifiers, event.x, event.y,
+                event.clickCount, false, event.button));
+    }
+
+    private void resize(int width, int height) {
+        panel.setSize(Math.max(1, width), Math.max(1, height));
+        image = new BufferedImage(panel.getWidth(), panel.getHeight(), BufferedImage.TYPE_INT_RGB);
+        panel.repaint();
+    }
+
+    // Paints what the panel asked to repaint, as the repaint manager would, and returns its area.
+    private long paintDirty() {
+        Rectangle area = dirty.take().intersection(new Rectangle(0, 0, panel.getWidth(), panel.getHeight()));
+        if (area.isEmpty()) {
+            return 0;
+        }
+        Graphics2D g2d = image.createGraphics();
+        g2d.setClip(area);
+        panel.paint(g2d);
+        g2d.dispose();
+        return (long) area.width * area.height;
+    }
+
+    private static void onEventThread(Runnable task) throws Exception {
+        try {
+            SwingUtilities.invokeAndWait(task);
+        } catch (java.lang.reflect.InvocationTargetException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+    }
+
+    /** Collects the areas components ask to repaint instead of scheduling a paint. */
+    private static class DirtyRegions extends RepaintManager {
+        private Rectangle dirty = new Rectangle();
+
+        DirtyRegions() {
+            setDoubleBufferingEnabled(false);
+        }
+
+        @Override
+        public void addDirtyRegion(JComponent component, int x, int y, int width, int height) {
+            if (width > 0 && height > 0) {
+                Rectangle area = new Rectangle(x, y, width, height);
+                if (dirty.isEmpty()) {
+                    dirty = area;
+                } else {
+                    dirty.add(area);
+                }
+            }
+        }
+
+        Rectangle take() {
+            Rectangle area = dirty;
+            dirty = new Rectangle();
+            return area;
+        }
+    }
+
+    /**
+     * Records a generated session: placing furniture from the catalogue, then
+     * dragging pieces around at 60 events a second, with the odd rotate,
+     * resize and delete. Times come from a simulated clock, so the trace
+     * plays back at the pace of a user. Returns the design as it ended.
+     */
+    static DesignSnapshot synthesize(File file, int itemCount, int dragCount) throws Exception {
+        DesignSnapshot[] result = new DesignSnapshot[1];
+        onEventThread(() -> {
+            DesignPanel panel = new DesignPanel();
+            panel.setSize(1000, 700);
+            panel.onRoomConfigChanged(18, 12, "L-Shape", new Color(240, 235, 220));
+            long[] now = {System.currentTimeMillis()};
+            Random random = new Random(3);
+            TraceRecorder recorder;
+            try {
+                recorder = TraceRecorder.start(panel, new FileOutputStream(file), () -> now[0]);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            RoomPolygon room = panel.getModel().getRoomPolygon();
+            for (int i = 0; i < itemCount; i++) {
+                now[0] += 300 + random.nextInt(700);
+                panel.setSelectedFurniture(TYPES[random.nextInt(TYPES.length)]);
+                Point p = pointInRoom(room, random);
+                now[0] += 500 + random.nextInt(1000);
+                press(panel, now[0], p, MouseEvent.BUTTON1);
+                now[0] += 80;
+                release(panel, now[0], p, MouseEvent.BUTTON1);
+            }
+            for (int i = 0; i < dragCount; i++) {
+                java.util.List<FurnitureItem> items = panel.getModel().getItems();
+                if (items.isEmpty()) {
+                    break;
+                }
+                FurnitureItem item = items.get(random.nextInt(items.size()));
+                Rectangle bounds = item.getBounds();
+                Point p = new Point((int) bounds.getCenterX(), (int) bounds.getCenterY());
+                now[0] += 400 + random.nextInt(1200);
+                if (random.nextInt(20) == 0) {
+                    // Context menu, then a command from it.
+                    press(panel, now[0], p, MouseEvent.BUTTON3);
+                    now[0] += 90;
+                    release(panel, now[0], p, MouseEvent.BUTTON3);
+                    now[0] += 600;
+                    if (random.nextBoolean()) {
+                        panel.removeSelectedFurniture();
+                    } else {
+                        panel.resizeSelectedFurniture(random.nextBoolean() ? 1.1 : 0.9);
+                    }
+                    continue;
+                }
+                press(panel, now[0], p, MouseEvent.BUTTON1);
+                double vx = random.nextGaussian() * 6, vy = random.nextGaussian() * 6;
+                for (int step = 10 + random.nextInt(50); step > 0; step--) {
+                    vx = vx * 0.9 + random.nextGaussian() * 2;
+                    vy = vy * 0.9 + random.nextGaussian() * 2;
+                    p = new Point(Math.max(0, Math.min(999, p.x + (int) vx)), Math.max(0, Math.min(699, p.y + (int) vy)));
+                    now[0] += 16;
+                    mouse(panel, MouseEvent.MOUSE_DRAGGED, now[0], p, InputEvent.BUTTON1_DOWN_MASK, MouseEvent.NOBUTTON);
+                }
+                now[0] += 16;
+                release(panel, now[0], p, MouseEvent.BUTTON1);
+                if (random.nextInt(8) == 0) {
+                    now[0] += 300;
+                    panel.rotateSelectedFurniture();
+                }
+            }
+            try {
+                recorder.stop();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            result[0] = panel.getModel().snapshot();
+        });
+        return result[0];
+    }
+
+    private static Point pointInRoom(RoomPolygon room, Random random) {
+        while (true) {
+            double x = room.getMinX() + random.nextDouble() * (room.getMaxX() - room.getMinX() - 2) + 1;
+            double y = room.getMinY() + random.nextDouble() * (room.getMaxY() - room.getMinY() - 2) + 1;
+            if (room.containsRect(x - 0.1, y - 0.1, 2.2, 1.6)) {
+                return new Point((int) (PreviewScene.ROOM_ORIGIN + x * PreviewScene.PIXELS_PER_METRE),
+                        (int) (PreviewScene.ROOM_ORIGIN + y * PreviewScene.PIXELS_PER_METRE));
+            }
+        }
+    }
+
+    private static void press(DesignPanel panel, long when, Point p, int button) {
+        mouse(panel, MouseEvent.MOUSE_PRESSED, when, p,
+                button == MouseEvent.BUTTON1 ? InputEvent.BUTTON1_DOWN_MASK : InputEvent.BUTTON3_DOWN_MASK, button);
+    }
+
+    private static void release(DesignPanel panel, long when, Point p, int button) {
+        mouse(panel, MouseEvent.MOUSE_RELEASED, when, p, 0, button);
+    }
+
+    private static void mouse(DesignPanel panel, int id, long when, Point p, int modifiers, int button) {
+        panel.dispatchEvent(new MouseEvent(panel, id, when, modifiers, p.x, p.y,
+                id == MouseEvent.MOUSE_DRAGGED ? 0 : 1, false, button));
+    }
+}